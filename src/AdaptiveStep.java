@@ -0,0 +1,188 @@
+// Dormand-Prince 5(4): splits a frame into as few steps as the tolerance allows, using the
+// difference between the embedded 5th and 4th order solutions as the error estimate
+public class AdaptiveStep {
+
+	private final int max_steps = 10000; // per frame, so a close encounter slows the simulation down instead of freezing it
+	private final double safety = 0.9;
+	private final double min_factor = 0.2, max_factor = 5.0; // how much a step can shrink or grow
+
+	// Dormand-Prince tableau (the last row is also the 5th order weights)
+	private final double[][] a = {
+			{},
+			{ 1 / 5.0 },
+			{ 3 / 40.0, 9 / 40.0 },
+			{ 44 / 45.0, -56 / 15.0, 32 / 9.0 },
+			{ 19372 / 6561.0, -25360 / 2187.0, 64448 / 6561.0, -212 / 729.0 },
+			{ 9017 / 3168.0, -355 / 33.0, 46732 / 5247.0, 49 / 176.0, -5103 / 18656.0 },
+			{ 35 / 384.0, 0.0, 500 / 1113.0, 125 / 192.0, -2187 / 6784.0, 11 / 84.0 } };
+	// 5th order minus 4th order weights
+	private final double[] e = { 71 / 57600.0, 0.0, -71 / 16695.0, 71 / 1920.0, -17253 / 339200.0, 22 / 525.0, -1 / 40.0 };
+
+	private double tolerance;
+	private double h = 0.0; // last step size that worked (carried over to the next frame)
+
+	// start of the step and the derivatives at each stage (position' = velocity, velocity' = acceleration)
+	private double[] x0 = new double[0], y0 = new double[0], vx0 = new double[0], vy0 = new double[0];
+	private double[][] kx = new double[7][0], ky = new double[7][0], kvx = new double[7][0], kvy = new double[7][0];
+
+	// stats for the last frame
+	private int steps = 0, rejected = 0;
+
+	public AdaptiveStep(double tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	// moves the bodies up to deltaTime ahead and returns how far they went (less if it ran out of
+	// steps); force sets the store's accelerations from its positions
+	public double advance(BodyStore bodies, double deltaTime, Runnable force) {
+		int n = bodies.size();
+		if (x0.length < n) {
+			int size = Math.max(n, x0.length * 2);
+			x0 = new double[size];
+			y0 = new double[size];
+			vx0 = new double[size];
+			vy0 = new double[size];
+			for (int s = 0; s < 7; s++) {
+				kx[s] = new double[size];
+				ky[s] = new double[size];
+				kvx[s] = new double[size];
+				kvy[s] = new double[size];
+			}
+		}
+		steps = 0;
+		rejected = 0;
+		if (n == 0 || deltaTime == 0)
+			return deltaTime;
+
+		// first stage
+		force.run();
+		derivatives(bodies, 0);
+
+		double done = 0.0;
+		if (!(h > 0) || h > Math.abs(deltaTime))
+			h = Math.abs(deltaTime);
+		double sign = Math.signum(deltaTime);
+		while (done < Math.abs(deltaTime) && steps + rejected < max_steps) {
+			double step = Math.min(h, Math.abs(deltaTime) - done);
+			System.arraycopy(bodies.sx, 0, x0, 0, n);
+			System.arraycopy(bodies.sy, 0, y0, 0, n);
+			System.arraycopy(bodies.vx, 0, vx0, 0, n);
+			System.arraycopy(bodies.vy, 0, vy0, 0, n);
+
+			// stages 2 to 7 (the 7th is at the 5th order solution, so its derivative starts the next step)
+			double hs = sign * step;
+			for (int s = 1; s < 7; s++) {
+				for (int i = 0; i < n; i++) {
+					double dx = 0.0, dy = 0.0, dvx = 0.0, dvy = 0.0;
+					for (int j = 0; j < s; j++) {
+						double w = a[s][j];
+						dx += w * kx[j][i];
+						dy += w * ky[j][i];
+						dvx += w * kvx[j][i];
+						dvy += w * kvy[j][i];
+					}
+					bodies.sx[i] = x0[i] + hs * dx;
+					bodies.sy[i] = y0[i] + hs * dy;
+					bodies.vx[i] = vx0[i] + hs * dvx;
+					bodies.vy[i] = vy0[i] + hs * dvy;
+				}
+				force.run();
+				derivatives(bodies, s);
+			}
+
+			// error relative to how far each body moved and how fast it's going (or getting)
+			double error = 0.0;
+			for (int i = 0; i < n; i++) {
+				double ex = 0.0, ey = 0.0, evx = 0.0, evy = 0.0;
+				for (int s = 0; s < 7; s++) {
+					ex += e[s] * kx[s][i];
+					ey += e[s] * ky[s][i];
+					evx += e[s] * kvx[s][i];
+					evy += e[s] * kvy[s][i];
+				}
+				double speed = Math.max(Math.hypot(vx0[i], vy0[i]), Math.hypot(bodies.vx[i], bodies.vy[i])) + Math.hypot(kvx[0][i], kvy[0][i]) * step;
+				double scale = tolerance * speed + Double.MIN_NORMAL;
+				error = Math.max(error, Math.max(Math.hypot(ex, ey) / scale, Math.hypot(evx, evy) * step / scale));
+			}
+
+			// a step that blew up (nan or infinite) is retried at the smallest factor; once the step
+			// is under an ulp of the frame it can't get smaller, so the frame ends where it was
+			if (!Double.isFinite(error)) {
+				rejected++;
+				h = step * min_factor;
+				restore(bodies, n);
+				if (h < Math.ulp(Math.abs(deltaTime)))
+					break;
+				continue;
+			}
+
+			// next step size (shrinking at most 5x and growing at most 5x)
+			double factor = error == 0 ? max_factor : Math.min(max_factor, Math.max(min_factor, safety * Math.pow(error, -0.2)));
+			if (error <= 1.0) {
+				done += step;
+				steps++;
+				swap(); // last stage's derivatives are the next step's first
+				if (step == h || factor < 1)
+					h = step * factor;
+			} else {
+				rejected++;
+				h = step * factor;
+				restore(bodies, n);
+			}
+		}
+		return sign * done;
+	}
+
+	// back to the start of a rejected step
+	private void restore(BodyStore bodies, int n) {
+		System.arraycopy(x0, 0, bodies.sx, 0, n);
+		System.arraycopy(y0, 0, bodies.sy, 0, n);
+		System.arraycopy(vx0, 0, bodies.vx, 0, n);
+		System.arraycopy(vy0, 0, bodies.vy, 0, n);
+	}
+
+	private void derivatives(BodyStore bodies, int s) {
+		int n = bodies.size();
+		System.arraycopy(bodies.vx, 0, kx[s], 0, n);
+		System.arraycopy(bodies.vy, 0, ky[s], 0, n);
+		System.arraycopy(bodies.ax, 0, kvx[s], 0, n);
+		System.arraycopy(bodies.ay, 0, kvy[s], 0, n);
+	}
+
+	private void swap() {
+		double[] t = kx[0];
+		kx[0] = kx[6];
+		kx[6] = t;
+		t = ky[0];
+		ky[0] = ky[6];
+		ky[6] = t;
+		t = kvx[0];
+		kvx[0] = kvx[6];
+		kvx[6] = t;
+		t = kvy[0];
+		kvy[0] = kvy[6];
+		kvy[6] = t;
+	}
+
+	public double getTolerance() {
+		return tolerance;
+	}
+
+	public void setTolerance(double tolerance) {
+		this.tolerance = Math.max(1e-14, Math.min(1.0, tolerance));
+	}
+
+	// steps taken and thrown away in the last frame
+	public int getSteps() {
+		return steps;
+	}
+
+	public int getRejected() {
+		return rejected;
+	}
+
+	public double getStepSize() {
+		return h;
+	}
+
+}
@@ -0,0 +1,296 @@
+import java.util.Arrays;
+
+// Barnes-Hut quadtree gravity (O(N log N) approximation of the direct sum)
+public class BarnesHut {
+
+	private final double G = 6.6743 * Math.pow(10, -11); // m^3 kg^-1 s^-2
+	private final int max_depth = 48; // coincident bodies stop splitting here
+
+	private double theta = 0.5; // opening angle (0 = direct sum)
+
+	// bodies (arrays of the store being stepped)
+	private int n = 0;
+	private double[] x = new double[0];
+	private double[] y = new double[0];
+	private double[] m = new double[0];
+	private double[] ax = new double[0]; // m/s^2
+	private double[] ay = new double[0];
+	private int[] next = new int[0]; // next body in the same leaf (-1 = end)
+	private int sources = 0; // bodies in the tree (test particles are left out)
+	private int[] source = new int[0];
+
+	// nodes (flat arrays, reused between steps)
+	private int nodes = 0;
+	private double[] nodeX = new double[0]; // center of the square
+	private double[] nodeY = new double[0];
+	private double[] nodeHalf = new double[0]; // half width of the square
+	private double[] nodeMass = new double[0];
+	private double[] nodeCX = new double[0]; // center of mass
+	private double[] nodeCY = new double[0];
+	private int[] nodeChild = new int[0]; // first of four children (-1 = leaf)
+	private int[] nodeBody = new int[0]; // first body in a leaf (-1 = empty)
+	private int[] nodeDepth = new int[0];
+	private int[] stack = new int[64];
+
+	// force error against the direct sum
+	private double errorRMS = 0.0;
+	private double errorMax = 0.0;
+	private int errorSamples = 0;
+
+	public BarnesHut(double theta) {
+		this.theta = theta;
+	}
+
+	// calculates every body's acceleration with the tree
+	public void accelerate(BodyStore bodies) {
+		n = bodies.size();
+		x = bodies.sx;
+		y = bodies.sy;
+		m = bodies.mass;
+		ax = bodies.ax;
+		ay = bodies.ay;
+		sources = bodies.sources();
+		source = bodies.source;
+		if (next.length < n)
+			next = new int[Math.max(n, next.length * 2)];
+		build();
+		for (int i = 0; i < n; i++) {
+			if (nodes == 0) { // nothing pulls
+				ax[i] = 0.0;
+				ay[i] = 0.0;
+			} else
+				accelerate(i);
+		}
+	}
+
+	// rebuilding the tree from scratch
+	private void build() {
+		nodes = 0;
+		if (sources == 0)
+			return;
+
+		// bounding square
+		double minX = x[source[0]], maxX = minX, minY = y[source[0]], maxY = minY;
+		for (int k = 1; k < sources; k++) {
+			int i = source[k];
+			minX = Math.min(minX, x[i]);
+			maxX = Math.max(maxX, x[i]);
+			minY = Math.min(minY, y[i]);
+			maxY = Math.max(maxY, y[i]);
+		}
+		double half = Math.max(maxX - minX, maxY - minY) / 2 * 1.0001 + 1.0; // padding so no body sits on the edge
+		int root = newNode((minX + maxX) / 2, (minY + maxY) / 2, half, 0);
+
+		// inserting bodies
+		for (int k = 0; k < sources; k++)
+			insert(root, source[k]);
+
+		// centers of mass (children always come after their parents)
+		for (int node = nodes - 1; node >= 0; node--) {
+			double mass = 0.0, cx = 0.0, cy = 0.0;
+			if (nodeChild[node] == -1) {
+				for (int i = nodeBody[node]; i != -1; i = next[i]) {
+					mass += m[i];
+					cx += m[i] * x[i];
+					cy += m[i] * y[i];
+				}
+			} else {
+				for (int c = nodeChild[node]; c < nodeChild[node] + 4; c++) {
+					mass += nodeMass[c];
+					cx += nodeMass[c] * nodeCX[c];
+					cy += nodeMass[c] * nodeCY[c];
+				}
+			}
+			nodeMass[node] = mass;
+			if (mass > 0) {
+				nodeCX[node] = cx / mass;
+				nodeCY[node] = cy / mass;
+			} else {
+				nodeCX[node] = nodeX[node];
+				nodeCY[node] = nodeY[node];
+			}
+		}
+	}
+
+	// inserting body i below node
+	private void insert(int node, int i) {
+		next[i] = -1;
+		while (true) {
+			// internal node: go down to the matching quadrant
+			if (nodeChild[node] != -1) {
+				node = nodeChild[node] + quadrant(node, x[i], y[i]);
+				continue;
+			}
+			// empty leaf or too deep to split: chain the body into the leaf
+			if (nodeBody[node] == -1 || nodeDepth[node] >= max_depth) {
+				next[i] = nodeBody[node];
+				nodeBody[node] = i;
+				return;
+			}
+			// occupied leaf: split and push the old bodies down
+			int old = nodeBody[node];
+			nodeBody[node] = -1;
+			double h = nodeHalf[node] / 2;
+			int depth = nodeDepth[node] + 1;
+			int first = newNode(nodeX[node] - h, nodeY[node] - h, h, depth);
+			newNode(nodeX[node] + h, nodeY[node] - h, h, depth);
+			newNode(nodeX[node] - h, nodeY[node] + h, h, depth);
+			newNode(nodeX[node] + h, nodeY[node] + h, h, depth);
+			nodeChild[node] = first;
+			while (old != -1) {
+				int following = next[old];
+				int child = first + quadrant(node, x[old], y[old]);
+				next[old] = nodeBody[child];
+				nodeBody[child] = old;
+				old = following;
+			}
+		}
+	}
+
+	// which child a point falls into (0 = bottom left, 3 = top right)
+	private int quadrant(int node, double px, double py) {
+		int q = 0;
+		if (px >= nodeX[node])
+			q += 1;
+		if (py >= nodeY[node])
+			q += 2;
+		return q;
+	}
+
+	private int newNode(double cx, double cy, double half, int depth) {
+		if (nodes == nodeX.length) {
+			int size = Math.max(64, nodes * 2);
+			nodeX = Arrays.copyOf(nodeX, size);
+			nodeY = Arrays.copyOf(nodeY, size);
+			nodeHalf = Arrays.copyOf(nodeHalf, size);
+			nodeMass = Arrays.copyOf(nodeMass, size);
+			nodeCX = Arrays.copyOf(nodeCX, size);
+			nodeCY = Arrays.copyOf(nodeCY, size);
+			nodeChild = Arrays.copyOf(nodeChild, size);
+			nodeBody = Arrays.copyOf(nodeBody, size);
+			nodeDepth = Arrays.copyOf(nodeDepth, size);
+		}
+		nodeX[nodes] = cx;
+		nodeY[nodes] = cy;
+		nodeHalf[nodes] = half;
+		nodeChild[nodes] = -1;
+		nodeBody[nodes] = -1;
+		nodeDepth[nodes] = depth;
+		return nodes++;
+	}
+
+	// walking the tree for body i
+	private void accelerate(int i) {
+		double px = x[i], py = y[i];
+		double sumX = 0.0, sumY = 0.0;
+		int top = 0;
+		stack[top++] = 0;
+		while (top > 0) {
+			int node = stack[--top];
+			if (nodeMass[node] == 0)
+				continue;
+			double dx = nodeCX[node] - px;
+			double dy = nodeCY[node] - py;
+			double d2 = dx * dx + dy * dy;
+			double s = 2 * nodeHalf[node];
+			boolean inside = Math.abs(px - nodeX[node]) <= nodeHalf[node] && Math.abs(py - nodeY[node]) <= nodeHalf[node];
+
+			// far enough away: use the center of mass
+			if (!inside && s * s < theta * theta * d2) {
+				double d = Math.sqrt(d2);
+				double a = G * nodeMass[node] / (d2 * d);
+				sumX += a * dx;
+				sumY += a * dy;
+			}
+			// leaf: direct sum over its bodies
+			else if (nodeChild[node] == -1) {
+				for (int j = nodeBody[node]; j != -1; j = next[j]) {
+					if (j == i)
+						continue;
+					double bx = x[j] - px;
+					double by = y[j] - py;
+					double b2 = bx * bx + by * by;
+					if (b2 == 0)
+						continue;
+					double b = Math.sqrt(b2);
+					double a = G * m[j] / (b2 * b);
+					sumX += a * bx;
+					sumY += a * by;
+				}
+			}
+			// opening the node
+			else {
+				if (top + 4 > stack.length)
+					stack = Arrays.copyOf(stack, stack.length * 2);
+				for (int c = nodeChild[node]; c < nodeChild[node] + 4; c++)
+					stack[top++] = c;
+			}
+		}
+		ax[i] = sumX;
+		ay[i] = sumY;
+	}
+
+	// comparing the last step's accelerations against the direct sum on a sample of bodies
+	public void measureError(int samples) {
+		errorRMS = 0.0;
+		errorMax = 0.0;
+		errorSamples = Math.min(samples, n);
+		if (errorSamples == 0)
+			return;
+		double diff2 = 0.0, total2 = 0.0;
+		for (int s = 0; s < errorSamples; s++) {
+			int i = (int) ((long) s * n / errorSamples);
+			// direct sum
+			double dax = 0.0, day = 0.0;
+			for (int k = 0; k < sources; k++) {
+				int j = source[k];
+				if (j == i)
+					continue;
+				double dx = x[j] - x[i];
+				double dy = y[j] - y[i];
+				double d2 = dx * dx + dy * dy;
+				if (d2 == 0)
+					continue;
+				double d = Math.sqrt(d2);
+				double a = G * m[j] / (d2 * d);
+				dax += a * dx;
+				day += a * dy;
+			}
+			double ex = ax[i] - dax;
+			double ey = ay[i] - day;
+			double e2 = ex * ex + ey * ey;
+			double a2 = dax * dax + day * day;
+			diff2 += e2;
+			total2 += a2;
+			if (a2 > 0)
+				errorMax = Math.max(errorMax, Math.sqrt(e2 / a2));
+		}
+		if (total2 > 0)
+			errorRMS = Math.sqrt(diff2 / total2);
+	}
+
+	public void setTheta(double theta) {
+		this.theta = Math.max(0.0, theta);
+	}
+
+	public double getTheta() {
+		return theta;
+	}
+
+	public int getNodes() {
+		return nodes;
+	}
+
+	public double getErrorRMS() {
+		return errorRMS;
+	}
+
+	public double getErrorMax() {
+		return errorMax;
+	}
+
+	public int getErrorSamples() {
+		return errorSamples;
+	}
+
+}
@@ -0,0 +1,130 @@
+import java.util.Arrays;
+
+// individual time steps in power-of-two blocks: level k bodies take steps of deltaTime / 2^k, so
+// close orbiters take small steps without making every other body take them too
+public class BlockSteps {
+
+	private final int max_level = 10; // smallest step is deltaTime / 1024
+	private final double eta = 0.02; // step = eta * |acceleration| / |jerk|
+
+	private double[] jx = new double[0], jy = new double[0]; // jerk (m/s^3)
+	private int[] level = new int[0];
+	private int[] active = new int[0]; // bodies being kicked at the current sub-step
+	private int[] levelCounts = new int[max_level + 1]; // bodies per level
+	private long forces = 0; // force evaluations in the last step
+
+	// one step of deltaTime; forcesValid says the store's accelerations (and the jerks saved
+	// here) still match the positions, as they do after a step unless something changed
+	public void step(BodyStore bodies, double deltaTime, boolean forcesValid, Gravity gravity, WorkerPool workers) {
+		int n = bodies.size();
+		if (level.length < n) {
+			int size = Math.max(n, level.length * 2);
+			jx = new double[size];
+			jy = new double[size];
+			level = new int[size];
+			active = new int[size];
+		}
+		forces = 0;
+		if (!forcesValid) {
+			for (int i = 0; i < n; i++)
+				active[i] = i;
+			gravity.accelerate(bodies, active, n, jx, jy, workers);
+			forces += n;
+		}
+
+		// everyone starts together, so everyone can pick their level
+		Arrays.fill(levelCounts, 0);
+		for (int i = 0; i < n; i++) {
+			level[i] = levelFor(bodies, i, deltaTime);
+			levelCounts[level[i]]++;
+			kick(bodies, i, deltaTime / (1 << level[i]) / 2);
+		}
+
+		// sub-steps, in units of the smallest step
+		int ticks = 1 << max_level;
+		int t = 0;
+		while (t < ticks) {
+			// next time any used level finishes a step
+			int next = ticks;
+			for (int k = max_level; k >= 0; k--) {
+				if (levelCounts[k] > 0) {
+					int stride = ticks >> k;
+					next = (t / stride + 1) * stride;
+					break;
+				}
+			}
+			// everyone drifts (forces need every position at the same time)
+			double h = (next - t) * deltaTime / ticks;
+			double[] sx = bodies.sx, sy = bodies.sy, vx = bodies.vx, vy = bodies.vy;
+			for (int i = 0; i < n; i++) {
+				sx[i] += vx[i] * h;
+				sy[i] += vy[i] * h;
+			}
+			t = next;
+
+			// bodies finishing a step get forces and their second half kick
+			int count = 0;
+			for (int i = 0; i < n; i++)
+				if (t % (ticks >> level[i]) == 0)
+					active[count++] = i;
+			gravity.accelerate(bodies, active, count, jx, jy, workers);
+			forces += count;
+			for (int a = 0; a < count; a++) {
+				int i = active[a];
+				kick(bodies, i, deltaTime / (1 << level[i]) / 2);
+				if (t == ticks)
+					continue;
+				// next level: smaller steps any time, bigger steps only where they line up
+				int want = levelFor(bodies, i, deltaTime);
+				int newLevel = level[i];
+				if (want > newLevel)
+					newLevel = want;
+				else
+					while (newLevel > want && t % (ticks >> (newLevel - 1)) == 0)
+						newLevel--;
+				levelCounts[level[i]]--;
+				levelCounts[newLevel]++;
+				level[i] = newLevel;
+				kick(bodies, i, deltaTime / (1 << newLevel) / 2);
+			}
+		}
+
+		// levels the next step starts with (for the debug view)
+		Arrays.fill(levelCounts, 0);
+		for (int i = 0; i < n; i++)
+			levelCounts[levelFor(bodies, i, deltaTime)]++;
+	}
+
+	// smallest level whose step is under eta * |a| / |j|
+	private int levelFor(BodyStore bodies, int i, double deltaTime) {
+		double a = Math.hypot(bodies.ax[i], bodies.ay[i]);
+		double j = Math.hypot(jx[i], jy[i]);
+		if (!(j > 0))
+			return 0;
+		double wanted = eta * a / j;
+		if (!(wanted < deltaTime))
+			return 0;
+		int k = (int) Math.ceil(Math.log(deltaTime / wanted) / Math.log(2));
+		return Math.min(k, max_level);
+	}
+
+	private void kick(BodyStore bodies, int i, double timeStep) {
+		bodies.vx[i] += bodies.ax[i] * timeStep;
+		bodies.vy[i] += bodies.ay[i] * timeStep;
+	}
+
+	// bodies on each level (from the end of the last step)
+	public int[] getLevelCounts() {
+		return levelCounts;
+	}
+
+	// force evaluations in the last step (a shared step would take n per smallest step used)
+	public long getForces() {
+		return forces;
+	}
+
+	public int getMaxLevel() {
+		return max_level;
+	}
+
+}
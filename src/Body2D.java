@@ -1,18 +1,14 @@
 import java.awt.Color;
 import java.awt.Rectangle;
 
+// a handle to one body in a BodyStore (names, colors and selection)
 public class Body2D {
 
-	private final double G = 6.67408 * Math.pow(10, -11);
-
 	private String name = ""; // body name
 
-	// physical properties
-	private double mass, radius, diameter;
-	private double sx, sy; // m
-	private double vx, vy; // m/s
-	private double ax = 0.0; // m/s^2
-	private double ay = 0.0;
+	// physical properties live in the store
+	private BodyStore store = null;
+	private int index = 0;
 
 	// color
 	private Color c = Color.WHITE; // default color
@@ -21,6 +17,7 @@ public class Body2D {
 	// simulation
 	private boolean locked;
 	boolean toSplit = false;
+	private boolean testParticle = false; // pulled by the other bodies without pulling them
 	// private Rectangle bounds;
 	private Trail trail = new Trail();
 
@@ -50,39 +47,57 @@ public class Body2D {
 		set_pp(mass, radius, sx, sy, vx, vy);
 	}
 
+	// handle whose store is bound afterwards (views and bodies added straight to a store)
+	Body2D(String name, Color color) {
+		this.name = name;
+		this.c = color;
+	}
+
 	// setting initial physical properties
 	public void set_pp(double mass, double radius, double sx, double sy, double vx, double vy) {
-		this.mass = mass;
-		this.radius = radius;
-		this.diameter = 2 * this.radius;
+		// new bodies get their own store until they are added to the simulation
+		if (store == null) {
+			store = new BodyStore(1);
+			index = store.add(this, mass, radius, sx, sy, vx, vy);
+		} else {
+			store.mass[index] = mass;
+			store.radius[index] = radius;
+			store.sx[index] = sx;
+			store.sy[index] = sy;
+			store.vx[index] = vx;
+			store.vy[index] = vy;
+			store.update(index);
+		}
+	}
 
-		this.sx = sx;
-		this.sy = sy;
-		this.vx = vx;
-		this.vy = vy;
+	// pointing the handle at a store slot
+	void bind(BodyStore store, int index) {
+		this.store = store;
+		this.index = index;
 	}
 
-	public void move(Body2D otherBody, double timeStep) {
-		// getting distances
-		double x = otherBody.getSX() - this.sx;
-		double y = otherBody.getSY() - this.sy;
-		double z = Math.sqrt(x * x + y * y);
+	// keeping a removed body readable (e.g. while it is still selected)
+	void detach() {
+		BodyStore from = store;
+		int i = index;
+		store = null;
+		set_pp(from.mass[i], from.radius[i], from.sx[i], from.sy[i], from.vx[i], from.vy[i]);
+		store.ax[index] = from.ax[i];
+		store.ay[index] = from.ay[i];
+	}
 
-		// calculating acceleration
-		double F = G * ((mass * otherBody.getMass()) / Math.pow(z, 2));
-		double a = F / mass;
+	// forgetting the store of a body that is gone for good
+	void unbind() {
+		store = null;
+		index = -1;
+	}
 
-		// vectors
-		ax = a * x / z;
-		ay = a * y / z;
-		vx += ax * timeStep;
-		vy += ay * timeStep;
+	BodyStore getStore() {
+		return store;
 	}
 
-	public void actuallyMove(double timeStep) {
-		// step
-		sx += vx * timeStep;
-		sy += vy * timeStep;
+	int getIndex() {
+		return index;
 	}
 
 	// add a point to the trail (TODO)
@@ -93,72 +108,14 @@ public class Body2D {
 	public Body2D collision(Body2D otherBody) {
 
 		// getting distances
-		double x = otherBody.getSX() - this.sx;
-		double y = otherBody.getSY() - this.sy;
+		double x = otherBody.getSX() - getSX();
+		double y = otherBody.getSY() - getSY();
 		double z = Math.sqrt(x * x + y * y);
-		double r = this.radius + otherBody.getRadius();
+		double r = getRadius() + otherBody.getRadius();
 
 		// confirmed collision
 		if (z < r) {
-
-			// black holes
-			Color newC = null;
-			if (this.c == Color.BLACK || otherBody.getColor() == Color.BLACK) {
-				newC = Color.BLACK;
-			}
-			// blending color
-			else {
-				int r1 = c.getRed();
-				int g1 = c.getGreen();
-				int b1 = c.getBlue();
-				double m1 = mass;
-				int r2 = otherBody.getColor().getRed();
-				int g2 = otherBody.getColor().getGreen();
-				int b2 = otherBody.getColor().getBlue();
-				double m2 = otherBody.getMass();
-				double newR = (r1 * m1 + r2 * m2) / (m1 + m2);
-				double newG = (g1 * m1 + g2 * m2) / (m1 + m2);
-				double newB = (b1 * m1 + b2 * m2) / (m1 + m2);
-				// white shifting
-				if (newR <= 255 - white_shift)
-					newR += white_shift;
-				if (newG <= 255 - white_shift)
-					newG += white_shift;
-				if (newB <= 255 - white_shift)
-					newB += white_shift;
-				newC = new Color((int) newR, (int) newG, (int) newB);
-			}
-
-			// mass/volume conservation
-			double newVolume = (4 / 3.0) * Math.PI * Math.pow(this.radius, 3) + (4 / 3.0) * Math.PI * Math.pow(otherBody.getRadius(), 3);
-			double newRadius = Math.pow((3 / 4.0) * newVolume / Math.PI, 1 / 3.0);
-			double newMass = mass + otherBody.getMass();
-
-			// centroid
-			double newSX = (this.sx * this.mass + otherBody.getSX() * otherBody.getMass()) / newMass;
-			double newSY = (this.sy * this.mass + otherBody.getSY() * otherBody.getMass()) / newMass;
-
-			// momentum conservation
-			double thisPX = mass * vx;
-			double otherPX = otherBody.getMass() * otherBody.getVX();
-			double thisPY = mass * vy;
-			double otherPY = otherBody.getMass() * otherBody.getVY();
-			double combinedMass = mass + otherBody.getMass();
-			double newVX = (thisPX + otherPX) / combinedMass;
-			double newVY = (thisPY + otherPY) / combinedMass;
-
-			// creating new body
-			String newName = "";
-			if (this.mass > otherBody.getMass())
-				newName = this.name;
-			else
-				newName = otherBody.getName();
-			Body2D newBody = new Body2D(newName, newC, newMass, newRadius, newSX, newSY, newVX, newVY);
-
-			// debugging
-			// System.out.println("Debug: " + this.toString() + " colliding with " + otherBody.toString() + " to create " + newBody.toString());
-			return newBody;
-
+			return merge(otherBody);
 		}
 
 		// no collision
@@ -168,10 +125,77 @@ public class Body2D {
 
 	}
 
+	// combines two bodies into a new one (mass, volume and momentum are conserved)
+	public Body2D merge(Body2D otherBody) {
+		Body2D newBody = copy();
+		newBody.absorb(otherBody);
+		return newBody;
+	}
+
+	// merges another body into this one in place; the other body should be removed afterwards
+	void absorb(Body2D otherBody) {
+		BodyStore o = otherBody.store;
+		int j = otherBody.index;
+		double m1 = store.mass[index];
+		double m2 = o.mass[j];
+		double newMass = m1 + m2;
+
+		// black holes
+		Color otherC = otherBody.getColor();
+		if (c == Color.BLACK || otherC == Color.BLACK) {
+			c = Color.BLACK;
+		}
+		// blending color
+		else {
+			double newR = (c.getRed() * m1 + otherC.getRed() * m2) / newMass;
+			double newG = (c.getGreen() * m1 + otherC.getGreen() * m2) / newMass;
+			double newB = (c.getBlue() * m1 + otherC.getBlue() * m2) / newMass;
+			// white shifting
+			if (newR <= 255 - white_shift)
+				newR += white_shift;
+			if (newG <= 255 - white_shift)
+				newG += white_shift;
+			if (newB <= 255 - white_shift)
+				newB += white_shift;
+			// same color (e.g. two bodies of one scenario) keeps the old object
+			if ((int) newR != c.getRed() || (int) newG != c.getGreen() || (int) newB != c.getBlue())
+				c = new Color((int) newR, (int) newG, (int) newB);
+		}
+
+		// mass/volume conservation (volumes add up, so the cubes of the radii do)
+		double r1 = store.radius[index];
+		double r2 = o.radius[j];
+		store.radius[index] = Math.cbrt(r1 * r1 * r1 + r2 * r2 * r2);
+
+		// centroid
+		store.sx[index] = (store.sx[index] * m1 + o.sx[j] * m2) / newMass;
+		store.sy[index] = (store.sy[index] * m1 + o.sy[j] * m2) / newMass;
+
+		// momentum conservation
+		store.vx[index] = (store.vx[index] * m1 + o.vx[j] * m2) / newMass;
+		store.vy[index] = (store.vy[index] * m1 + o.vy[j] * m2) / newMass;
+		store.mass[index] = newMass;
+		store.update(index);
+
+		// the heavier body's name
+		if (!(m1 > m2))
+			name = otherBody.name;
+	}
+
 	public void setColor(Color c) {
 		this.c = c;
 	}
 
+	public void setTestParticle(boolean testParticle) {
+		this.testParticle = testParticle;
+		if (store != null)
+			store.update(index);
+	}
+
+	public boolean isTestParticle() {
+		return testParticle;
+	}
+
 	public String getName() {
 		if (name.equals(""))
 			return "" + this; // no name; return obj address
@@ -179,44 +203,54 @@ public class Body2D {
 			return name;
 	}
 
+	// the name as given ("" = none; for saving)
+	String getStoredName() {
+		return name;
+	}
+
+	// putting back a saved name (rewinding past a merge that renamed the body)
+	void setStoredName(String name) {
+		this.name = name;
+	}
+
 	public Color getColor() {
 		return c;
 	}
 
 	public double getRadius() {
-		return radius;
+		return store.radius[index];
 	}
 
 	public double getDiameter() {
-		return diameter;
+		return 2 * store.radius[index];
 	}
 
 	public double getMass() {
-		return mass;
+		return store.mass[index];
 	}
 
 	public double getSX() {
-		return sx;
+		return store.sx[index];
 	}
 
 	public double getSY() {
-		return sy;
+		return store.sy[index];
 	}
 
 	public double getVX() {
-		return vx;
+		return store.vx[index];
 	}
 
 	public double getVY() {
-		return vy;
+		return store.vy[index];
 	}
 
 	public double getAX() {
-		return ax;
+		return store.ax[index];
 	}
 
 	public double getAY() {
-		return ay;
+		return store.ay[index];
 	}
 
 	/*
@@ -230,7 +264,17 @@ public class Body2D {
 	*/
 
 	public Body2D copy() {
-		return new Body2D(name, c, mass, radius, sx, sy, vx, vy);
+		Body2D copy = new Body2D(name, c, getMass(), getRadius(), getSX(), getSY(), getVX(), getVY());
+		copy.testParticle = testParticle;
+		return copy;
+	}
+
+	// handle with the same name and color, bound by BodyStore.copy()
+	Body2D copyView() {
+		Body2D view = new Body2D(name, c);
+		view.toSplit = toSplit;
+		view.testParticle = testParticle;
+		return view;
 	}
 
 }
@@ -0,0 +1,231 @@
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// structure-of-arrays storage for bodies; the physics runs on the arrays directly
+public class BodyStore implements Iterable<Body2D> {
+
+	private int n = 0; // number of bodies
+	private long version = 0; // counts every added or removed body and every mass or radius change
+
+	// physical properties (index = body)
+	double[] sx, sy; // m
+	double[] vx, vy; // m/s
+	double[] ax, ay; // m/s^2
+	double[] mass, radius;
+	// cached from mass and radius (see update)
+	double[] massRoot; // kg^(1/3)
+	double[] rocheRadius; // radius / massRoot; a body's Roche limit is c * rocheRadius * (other body's massRoot)
+
+	// test particles are pulled but don't pull (their gravity is too small to matter); both
+	// arrays are refreshed by sources()
+	int[] source = new int[0]; // bodies that pull, in index order
+	boolean[] test = new boolean[0];
+	private int sourceCount = 0;
+	private long sourcesVersion = -1;
+	private double testRatio = 0.0; // bodies lighter than this times the heaviest are test particles
+
+	// handles for selection, names and colors
+	private Body2D[] handles;
+
+	public BodyStore() {
+		this(16);
+	}
+
+	public BodyStore(int capacity) {
+		capacity = Math.max(capacity, 1);
+		sx = new double[capacity];
+		sy = new double[capacity];
+		vx = new double[capacity];
+		vy = new double[capacity];
+		ax = new double[capacity];
+		ay = new double[capacity];
+		mass = new double[capacity];
+		radius = new double[capacity];
+		massRoot = new double[capacity];
+		rocheRadius = new double[capacity];
+		handles = new Body2D[capacity];
+	}
+
+	// adds a new body and returns its index
+	int add(Body2D body, double mass, double radius, double sx, double sy, double vx, double vy) {
+		if (n == handles.length)
+			grow(n * 2);
+		this.sx[n] = sx;
+		this.sy[n] = sy;
+		this.vx[n] = vx;
+		this.vy[n] = vy;
+		this.ax[n] = 0.0;
+		this.ay[n] = 0.0;
+		this.mass[n] = mass;
+		this.radius[n] = radius;
+		update(n);
+		handles[n] = body;
+		version++;
+		return n++;
+	}
+
+	// adds a new body straight to this store (no store of its own first, for loading many bodies)
+	public Body2D add(String name, Color color, double mass, double radius, double sx, double sy, double vx, double vy) {
+		Body2D body = new Body2D(name, color);
+		body.bind(this, add(body, mass, radius, sx, sy, vx, vy));
+		return body;
+	}
+
+	// moves a body (and its properties) into this store
+	public void add(Body2D body) {
+		BodyStore from = body.getStore();
+		int i = body.getIndex();
+		int index = add(body, from.mass[i], from.radius[i], from.sx[i], from.sy[i], from.vx[i], from.vy[i]);
+		ax[index] = from.ax[i];
+		ay[index] = from.ay[i];
+		body.bind(this, index);
+	}
+
+	// removes a body by moving the last body into its slot
+	public boolean remove(Body2D body) {
+		return remove(body, true);
+	}
+
+	// removes a body whose handle isn't needed anymore (e.g. absorbed in a collision);
+	// the handle is left unbound instead of getting a copy of its properties
+	boolean discard(Body2D body) {
+		return remove(body, false);
+	}
+
+	private boolean remove(Body2D body, boolean keep) {
+		int i = body.getIndex();
+		if (body.getStore() != this || i < 0 || i >= n || handles[i] != body)
+			return false;
+		if (keep)
+			body.detach();
+		else
+			body.unbind();
+		version++;
+		int last = --n;
+		if (i != last) {
+			sx[i] = sx[last];
+			sy[i] = sy[last];
+			vx[i] = vx[last];
+			vy[i] = vy[last];
+			ax[i] = ax[last];
+			ay[i] = ay[last];
+			mass[i] = mass[last];
+			radius[i] = radius[last];
+			massRoot[i] = massRoot[last];
+			rocheRadius[i] = rocheRadius[last];
+			handles[i] = handles[last];
+			handles[i].bind(this, i);
+		}
+		handles[last] = null;
+		return true;
+	}
+
+	// recalculating the cached terms after a body's mass, radius or test particle flag changed
+	void update(int i) {
+		massRoot[i] = Math.cbrt(mass[i]);
+		rocheRadius[i] = mass[i] > 0 ? radius[i] / massRoot[i] : 0.0;
+		version++;
+	}
+
+	// removes every body (their handles are left unbound)
+	public void clear() {
+		for (int i = 0; i < n; i++) {
+			handles[i].unbind();
+			handles[i] = null;
+		}
+		n = 0;
+		version++;
+	}
+
+	// deep copy of every body
+	public BodyStore copy() {
+		BodyStore copy = new BodyStore(n);
+		for (int i = 0; i < n; i++) {
+			Body2D view = handles[i].copyView();
+			view.bind(copy, copy.add(view, mass[i], radius[i], sx[i], sy[i], vx[i], vy[i]));
+		}
+		System.arraycopy(ax, 0, copy.ax, 0, n);
+		System.arraycopy(ay, 0, copy.ay, 0, n);
+		return copy;
+	}
+
+	private void grow(int capacity) {
+		sx = Arrays.copyOf(sx, capacity);
+		sy = Arrays.copyOf(sy, capacity);
+		vx = Arrays.copyOf(vx, capacity);
+		vy = Arrays.copyOf(vy, capacity);
+		ax = Arrays.copyOf(ax, capacity);
+		ay = Arrays.copyOf(ay, capacity);
+		mass = Arrays.copyOf(mass, capacity);
+		radius = Arrays.copyOf(radius, capacity);
+		massRoot = Arrays.copyOf(massRoot, capacity);
+		rocheRadius = Arrays.copyOf(rocheRadius, capacity);
+		handles = Arrays.copyOf(handles, capacity);
+	}
+
+	// refreshes source and test if the bodies changed and returns the number of sources
+	int sources() {
+		if (sourcesVersion == version)
+			return sourceCount;
+		if (test.length < n) {
+			test = new boolean[handles.length];
+			source = new int[handles.length];
+		}
+		double heaviest = 0.0;
+		for (int i = 0; i < n; i++)
+			heaviest = Math.max(heaviest, mass[i]);
+		double testMass = testRatio * heaviest;
+		sourceCount = 0;
+		for (int i = 0; i < n; i++) {
+			test[i] = handles[i].isTestParticle() || mass[i] < testMass;
+			if (!test[i])
+				source[sourceCount++] = i;
+		}
+		sourcesVersion = version;
+		return sourceCount;
+	}
+
+	// bodies lighter than ratio times the heaviest become test particles (0 = only flagged ones)
+	public void setTestRatio(double ratio) {
+		testRatio = ratio;
+		version++;
+	}
+
+	public double getTestRatio() {
+		return testRatio;
+	}
+
+	// changes whenever the bodies (not just their motion) change
+	public long getVersion() {
+		return version;
+	}
+
+	public int size() {
+		return n;
+	}
+
+	public Body2D get(int i) {
+		if (i >= n)
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + n);
+		return handles[i];
+	}
+
+	public Iterator<Body2D> iterator() {
+		return new Iterator<Body2D>() {
+			private int i = 0;
+
+			public boolean hasNext() {
+				return i < n;
+			}
+
+			public Body2D next() {
+				if (i >= n)
+					throw new NoSuchElementException();
+				return handles[i++];
+			}
+		};
+	}
+
+}
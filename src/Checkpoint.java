@@ -0,0 +1,262 @@
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+
+// the whole simulation state in a binary file: a little-endian header and then one column per
+// body property, so every column goes in or out with one bulk copy through a mapped buffer.
+// files are written next to their destination and moved over it once they are complete, so a
+// crash mid-write leaves the previous checkpoint alone
+//
+//   0  magic "NBODYCKP"          8   version
+//  12  bodies                    16  time (s)
+//  24  time scale (s)            32  time multiplier
+//  36  physics mode              40  m per pixel
+//  48  camera x, y (m)           64  minimum mass (kg)
+//  72  test ratio                80  flags (1 collisions, 2 tidal forces)
+//  84  selected body (-1 none)   88  names, bytes of names
+//  96  reserved up to header_bytes
+//  then sx, sy, vx, vy, mass, radius (doubles), color (argb ints), name (int index), test (bytes),
+//  and the names (int length and utf-8 each)
+public class Checkpoint {
+
+	private static final long magic = 0x504b4359444f424eL; // "NBODYCKP" read as a little-endian long
+	private static final int version = 1;
+	private static final int header_bytes = 128;
+	private static final int body_bytes = 6 * 8 + 4 + 4 + 1;
+
+	// simulation
+	public double time = 0.0; // s
+	public double timeScale = 0.0; // s per frame
+	public int timeMult = 1;
+	public int physicsMode = 0;
+	public double screenScale = 1.0; // m per pixel
+	public double cameraX = 0.0, cameraY = 0.0; // m
+	public double minMass = 0.0; // kg
+	public double testRatio = 0.0;
+	public boolean collisions = true, tidalForces = true;
+	public int selected = -1;
+
+	// bodies (arrays can be longer than n; they are reused between checkpoints)
+	public int n = 0;
+	public double[] sx = new double[0], sy = new double[0];
+	public double[] vx = new double[0], vy = new double[0];
+	public double[] mass = new double[0], radius = new double[0];
+	public Color[] colors = new Color[0];
+	public String[] names = new String[0];
+	public boolean[] test = new boolean[0];
+
+	// copies the bodies (colors and names are shared, they don't change)
+	public void capture(BodyStore bodies, Body2D selectedBody) {
+		resize(bodies.size());
+		System.arraycopy(bodies.sx, 0, sx, 0, n);
+		System.arraycopy(bodies.sy, 0, sy, 0, n);
+		System.arraycopy(bodies.vx, 0, vx, 0, n);
+		System.arraycopy(bodies.vy, 0, vy, 0, n);
+		System.arraycopy(bodies.mass, 0, mass, 0, n);
+		System.arraycopy(bodies.radius, 0, radius, 0, n);
+		for (int i = 0; i < n; i++) {
+			Body2D body = bodies.get(i);
+			colors[i] = body.getColor();
+			names[i] = body.getStoredName();
+			test[i] = body.isTestParticle();
+		}
+		// not holding on to strings and colors of bodies that are gone
+		Arrays.fill(colors, n, colors.length, null);
+		Arrays.fill(names, n, names.length, null);
+		selected = selectedBody != null && selectedBody.getStore() == bodies ? selectedBody.getIndex() : -1;
+	}
+
+	// adds the bodies to a store
+	public void restore(BodyStore bodies) {
+		for (int i = 0; i < n; i++) {
+			Body2D body = bodies.add(names[i], colors[i], mass[i], radius[i], sx[i], sy[i], vx[i], vy[i]);
+			if (test[i])
+				body.setTestParticle(true);
+		}
+	}
+
+	private void resize(int n) {
+		this.n = n;
+		if (sx.length >= n)
+			return;
+		int size = Math.max(n, sx.length * 2);
+		sx = new double[size];
+		sy = new double[size];
+		vx = new double[size];
+		vy = new double[size];
+		mass = new double[size];
+		radius = new double[size];
+		colors = new Color[size];
+		names = new String[size];
+		test = new boolean[size];
+	}
+
+	// writes the checkpoint to file (through a temporary file next to it)
+	public void write(File file) throws IOException {
+		// names are mostly repeated (or empty), so each one is stored once
+		HashMap<String, Integer> table = new HashMap<>();
+		int[] nameIndex = new int[n];
+		byte[][] nameBytes = new byte[16][];
+		long namesSize = 0;
+		for (int i = 0; i < n; i++) {
+			Integer index = table.get(names[i]);
+			if (index == null) {
+				index = table.size();
+				table.put(names[i], index);
+				if (index == nameBytes.length)
+					nameBytes = Arrays.copyOf(nameBytes, index * 2);
+				nameBytes[index] = names[i].getBytes(StandardCharsets.UTF_8);
+				namesSize += 4 + nameBytes[index].length;
+			}
+			nameIndex[i] = index;
+		}
+		int[] argb = new int[n];
+		byte[] flags = new byte[n];
+		for (int i = 0; i < n; i++) {
+			argb[i] = colors[i].getRGB();
+			flags[i] = (byte) (test[i] ? 1 : 0);
+		}
+
+		Path target = file.toPath().toAbsolutePath();
+		Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			ByteBuffer header = map(channel, FileChannel.MapMode.READ_WRITE, 0, header_bytes);
+			header.putLong(magic).putInt(version).putInt(n);
+			header.putDouble(time).putDouble(timeScale).putInt(timeMult).putInt(physicsMode);
+			header.putDouble(screenScale).putDouble(cameraX).putDouble(cameraY).putDouble(minMass).putDouble(testRatio);
+			header.putInt((collisions ? 1 : 0) | (tidalForces ? 2 : 0)).putInt(selected);
+			header.putInt(table.size()).putInt((int) namesSize);
+			force(header);
+
+			// columns (mapped one at a time; a single mapping can't go past 2 GB)
+			long position = header_bytes;
+			for (double[] column : new double[][] { sx, sy, vx, vy, mass, radius }) {
+				ByteBuffer buffer = map(channel, FileChannel.MapMode.READ_WRITE, position, n * 8L);
+				buffer.asDoubleBuffer().put(column, 0, n);
+				force(buffer);
+				position += n * 8L;
+			}
+			for (int[] column : new int[][] { argb, nameIndex }) {
+				ByteBuffer buffer = map(channel, FileChannel.MapMode.READ_WRITE, position, n * 4L);
+				buffer.asIntBuffer().put(column, 0, n);
+				force(buffer);
+				position += n * 4L;
+			}
+			ByteBuffer buffer = map(channel, FileChannel.MapMode.READ_WRITE, position, n);
+			buffer.put(flags, 0, n);
+			force(buffer);
+			position += n;
+			buffer = map(channel, FileChannel.MapMode.READ_WRITE, position, namesSize);
+			for (int k = 0; k < table.size(); k++)
+				buffer.putInt(nameBytes[k].length).put(nameBytes[k]);
+			force(buffer);
+		}
+		try {
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	// reads a checkpoint written by write
+	public static Checkpoint read(File file) throws IOException {
+		Checkpoint c = new Checkpoint();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < header_bytes)
+				throw new IOException("Not a checkpoint (too short)");
+			ByteBuffer header = map(channel, FileChannel.MapMode.READ_ONLY, 0, header_bytes);
+			if (header.getLong() != magic)
+				throw new IOException("Not a checkpoint");
+			int fileVersion = header.getInt();
+			if (fileVersion != version)
+				throw new IOException("Checkpoint version " + fileVersion + " (this version reads " + version + ")");
+			int n = header.getInt();
+			c.time = header.getDouble();
+			c.timeScale = header.getDouble();
+			c.timeMult = header.getInt();
+			c.physicsMode = header.getInt();
+			c.screenScale = header.getDouble();
+			c.cameraX = header.getDouble();
+			c.cameraY = header.getDouble();
+			c.minMass = header.getDouble();
+			c.testRatio = header.getDouble();
+			int flags = header.getInt();
+			c.collisions = (flags & 1) != 0;
+			c.tidalForces = (flags & 2) != 0;
+			c.selected = header.getInt();
+			int nameCount = header.getInt();
+			int namesSize = header.getInt();
+			if (n < 0 || nameCount < 0 || namesSize < 0 || size != header_bytes + (long) n * body_bytes + namesSize)
+				throw new IOException("Checkpoint is cut short or damaged");
+
+			c.resize(n);
+			long position = header_bytes;
+			for (double[] column : new double[][] { c.sx, c.sy, c.vx, c.vy, c.mass, c.radius }) {
+				map(channel, FileChannel.MapMode.READ_ONLY, position, n * 8L).asDoubleBuffer().get(column, 0, n);
+				position += n * 8L;
+			}
+			int[] argb = new int[n], nameIndex = new int[n];
+			for (int[] column : new int[][] { argb, nameIndex }) {
+				map(channel, FileChannel.MapMode.READ_ONLY, position, n * 4L).asIntBuffer().get(column, 0, n);
+				position += n * 4L;
+			}
+			ByteBuffer buffer = map(channel, FileChannel.MapMode.READ_ONLY, position, n);
+			for (int i = 0; i < n; i++)
+				c.test[i] = buffer.get() != 0;
+			position += n;
+			buffer = map(channel, FileChannel.MapMode.READ_ONLY, position, namesSize);
+			String[] table = new String[nameCount];
+			for (int k = 0; k < nameCount; k++) {
+				if (buffer.remaining() < 4)
+					throw new IOException("Checkpoint names are damaged");
+				int length = buffer.getInt();
+				if (length < 0 || length > buffer.remaining())
+					throw new IOException("Checkpoint names are damaged");
+				byte[] bytes = new byte[length];
+				buffer.get(bytes);
+				table[k] = new String(bytes, StandardCharsets.UTF_8);
+			}
+
+			// colors are mostly repeated too
+			HashMap<Integer, Color> colors = new HashMap<>();
+			for (int i = 0; i < n; i++) {
+				if (nameIndex[i] < 0 || nameIndex[i] >= nameCount)
+					throw new IOException("Checkpoint names are damaged");
+				c.names[i] = table[nameIndex[i]];
+				c.colors[i] = color(argb[i], colors);
+			}
+			if (c.selected >= n)
+				c.selected = -1;
+		}
+		return c;
+	}
+
+	// a color read back from its argb value (cache keeps one object per color). black holes are
+	// told apart by being Color.BLACK itself (Body2D.absorb, the panel's outline), so black comes
+	// back as that object
+	static Color color(int argb, HashMap<Integer, Color> cache) {
+		return cache.computeIfAbsent(argb, rgb -> rgb == Color.BLACK.getRGB() ? Color.BLACK : new Color(rgb, true));
+	}
+
+	private static ByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long position, long size) throws IOException {
+		return channel.map(mode, position, size).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static void force(ByteBuffer buffer) {
+		((MappedByteBuffer) buffer).force();
+	}
+
+}
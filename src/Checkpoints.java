@@ -0,0 +1,96 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+// saves and loads checkpoints on a thread of their own so the simulation never waits for the
+// disk; the simulation only copies its arrays into the (reused) checkpoint. one checkpoint is
+// written at a time, and saving again before it's done is skipped
+public class Checkpoints {
+
+	private final ExecutorService thread = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "Checkpoints");
+		t.setDaemon(true);
+		return t;
+	});
+	private final Checkpoint buffer = new Checkpoint();
+	private final AtomicBoolean writing = new AtomicBoolean(false);
+
+	// stats
+	private volatile String status = "none";
+	private volatile long saved = 0, skipped = 0;
+
+	// the checkpoint to fill before calling write, or null while the last one is still being written
+	public Checkpoint begin() {
+		if (writing.compareAndSet(false, true))
+			return buffer;
+		skipped++;
+		return null;
+	}
+
+	// writes the checkpoint from begin in the background
+	public void write(File file) {
+		thread.execute(() -> {
+			long start = System.nanoTime();
+			try {
+				buffer.write(file);
+				saved++;
+				status = "saved " + file + " (" + buffer.n + " bodies, " + (System.nanoTime() - start) / 1000000 + " ms)";
+			} catch (IOException | RuntimeException e) {
+				status = "couldn't save " + file + ": " + e.getMessage();
+				System.err.println("Couldn't save checkpoint " + file + ": " + e.getMessage());
+			} finally {
+				writing.set(false);
+			}
+		});
+	}
+
+	// reads a checkpoint in the background and hands it to then (on the checkpoint thread)
+	public void read(File file, Consumer<Checkpoint> then) {
+		thread.execute(() -> {
+			long start = System.nanoTime();
+			Checkpoint c;
+			try {
+				c = Checkpoint.read(file);
+			} catch (IOException | RuntimeException e) {
+				status = "couldn't load " + file + ": " + e.getMessage();
+				System.err.println("Couldn't load checkpoint " + file + ": " + e.getMessage());
+				return;
+			}
+			status = "loaded " + file + " (" + c.n + " bodies, " + (System.nanoTime() - start) / 1000000 + " ms)";
+			then.accept(c);
+		});
+	}
+
+	// waits for the checkpoints that were started to finish (before exiting)
+	public void finish() {
+		thread.shutdown();
+		try {
+			thread.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public boolean isWriting() {
+		return writing.get();
+	}
+
+	// last thing that happened
+	public String getStatus() {
+		return status;
+	}
+
+	public long getSaved() {
+		return saved;
+	}
+
+	// saves that came while one was being written
+	public long getSkipped() {
+		return skipped;
+	}
+
+}
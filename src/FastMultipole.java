@@ -0,0 +1,554 @@
+import java.util.Arrays;
+
+// fast multipole method: every cell of a quadtree gets a multipole expansion of its bodies
+// (upward pass), cells far enough from each other exchange them as local Taylor expansions
+// (found by walking the tree against itself), and the local expansions are passed down to the
+// leaves (downward pass), so the work grows with N. the expansions are Cartesian Taylor series
+// of 1/r: the simulation's gravity is 3D gravity in a plane, not the 2D log potential, so
+// complex expansions don't apply. coordinates are scaled to the root cell (width 1)
+public class FastMultipole {
+
+	private final double G = Gravity.G; // m^3 kg^-1 s^-2
+	private final int leaf_bodies = 32; // leaves split above this many bodies
+	private final int max_depth = 32; // coincident bodies stop splitting here
+	private final int max_order = 16;
+	private final double theta = 0.7; // cells interact through expansions when (radius + radius) < theta * distance
+	private final int tasks_per_worker = 8; // target cells the tree walk is split into
+
+	// expansions (coefficient t is the multi-index (ex[t], ey[t]), ordered by degree)
+	private int order; // highest degree kept
+	private int terms; // (order + 1)(order + 2) / 2
+	private int[] ex = new int[0], ey = new int[0];
+	private int[] sum = new int[0]; // sum[k * terms + t] = coefficient of k + t (for degrees up to order)
+	private double[] inverseFactorial = new double[0]; // 1 / (ex! ey!)
+	private double[][] binomial = new double[0][];
+
+	// bodies (scaled positions, sorted so every cell's bodies are next to each other)
+	private BodyStore bodies = null; // of the last call (for the error check)
+	private double minX, minY, width; // root cell
+	private double[] x = new double[0], y = new double[0];
+	private int[] sorted = new int[0], quadrant = new int[0], scratch = new int[0];
+
+	// cells (flat arrays; children are numbered after their parents, level by level)
+	private int cells = 0;
+	private double[] cellX = new double[0], cellY = new double[0], cellHalf = new double[0]; // center, half width
+	private double[] comX = new double[0], comY = new double[0]; // center of mass (where the multipole is)
+	private double[] sourceRadius = new double[0], targetRadius = new double[0]; // farthest source from the center of mass, body from the center
+	private int[] first = new int[0], count = new int[0], sources = new int[0]; // bodies sorted[first] to sorted[first + count - 1]
+	private int[] child = new int[0], parent = new int[0]; // first of four children (-1 = leaf)
+	private int[] levelStart = new int[max_depth + 2]; // cells of level l are levelStart[l] to levelStart[l + 1] - 1
+	private int depth = 0; // levels in use
+	private double[] multipole = new double[0], local = new double[0]; // cell * terms + coefficient
+	private int[] roots = new int[0]; // cells the tree walk starts from (one task each)
+
+	// stats
+	private long interactions = 0, pairs = 0; // expansions exchanged and bodies summed directly in the last call
+	private double errorRMS = 0.0;
+	private double errorMax = 0.0;
+	private int errorSamples = 0;
+
+	public FastMultipole(int order) {
+		setOrder(order);
+	}
+
+	// calculates every body's acceleration
+	public void accelerate(BodyStore bodies, WorkerPool workers) {
+		this.bodies = bodies;
+		int n = bodies.size();
+		bodies.sources();
+		double[] ax = bodies.ax, ay = bodies.ay;
+		for (int i = 0; i < n; i++) {
+			ax[i] = 0.0;
+			ay[i] = 0.0;
+		}
+		if (!build(bodies)) { // no extent to split (or bodies at infinity)
+			Gravity.accelerate(bodies);
+			return;
+		}
+
+		// upward pass, deepest level first
+		for (int level = depth - 1; level >= 0; level--) {
+			final int l = level;
+			workers.run(levelStart[level + 1] - levelStart[level], (start, end) -> {
+				double[] power = new double[terms];
+				for (int c = start; c < end; c++)
+					upward(levelStart[l] + c, power);
+			});
+		}
+
+		// tree walk: each task takes a target cell and walks the whole tree for it
+		Arrays.fill(local, 0, cells * terms, 0.0);
+		int tasks = tasks(workers.getWorkers() * tasks_per_worker);
+		long[] stats = new long[2 * tasks];
+		workers.run(tasks, (start, end) -> {
+			double[] derivative = new double[terms];
+			for (int k = start; k < end; k++)
+				walk(roots[k], 0, derivative, stats, 2 * k);
+		});
+		interactions = 0;
+		pairs = 0;
+		for (int k = 0; k < tasks; k++) {
+			interactions += stats[2 * k];
+			pairs += stats[2 * k + 1];
+		}
+
+		// downward pass, root first (the leaves end with their bodies' accelerations)
+		double scale = G / (width * width);
+		for (int level = 1; level < depth; level++) {
+			final int l = level;
+			workers.run(levelStart[level + 1] - levelStart[level], (start, end) -> {
+				double[] power = new double[terms];
+				for (int c = start; c < end; c++)
+					downward(levelStart[l] + c, power, scale);
+			});
+		}
+		if (child[0] == -1) // the root is the only leaf
+			downward(0, new double[terms], scale);
+	}
+
+	// sorts the bodies into a quadtree (level by level); false if there's nothing to split
+	private boolean build(BodyStore bodies) {
+		int n = bodies.size();
+		double[] sx = bodies.sx, sy = bodies.sy;
+		if (n < 2)
+			return false;
+		double maxX = sx[0], maxY = sy[0];
+		minX = sx[0];
+		minY = sy[0];
+		for (int i = 1; i < n; i++) {
+			minX = Math.min(minX, sx[i]);
+			maxX = Math.max(maxX, sx[i]);
+			minY = Math.min(minY, sy[i]);
+			maxY = Math.max(maxY, sy[i]);
+		}
+		width = Math.max(maxX - minX, maxY - minY) * 1.0001; // padding so no body sits on the edge
+		if (!(width > 0) || Double.isInfinite(width))
+			return false;
+
+		if (x.length < n) {
+			int size = Math.max(n, x.length * 2);
+			x = new double[size];
+			y = new double[size];
+			sorted = new int[size];
+			quadrant = new int[size];
+			scratch = new int[size];
+		}
+		for (int i = 0; i < n; i++) {
+			x[i] = (sx[i] - minX) / width;
+			y[i] = (sy[i] - minY) / width;
+			sorted[i] = i;
+		}
+
+		// splitting cells level by level (a level's cells are all made before the next level's)
+		cells = 0;
+		depth = 0;
+		newCell(-1, 0.5, 0.5, 0.5, 0, n);
+		levelStart[0] = 0;
+		for (int level = 0; level <= max_depth && levelStart[level] < cells; level++) {
+			depth = level + 1;
+			int end = cells;
+			for (int c = levelStart[level]; c < end; c++)
+				if (count[c] > leaf_bodies && level < max_depth)
+					split(c);
+			levelStart[level + 1] = end;
+		}
+		levelStart[depth] = cells;
+		if (multipole.length < cells * terms) {
+			multipole = new double[Math.max(cells * terms, multipole.length * 2)];
+			local = new double[multipole.length];
+		}
+		return true;
+	}
+
+	// sorting a cell's bodies into its four children
+	private void split(int c) {
+		int start = first[c], end = first[c] + count[c];
+		int[] sizes = new int[4];
+		for (int k = start; k < end; k++) {
+			int i = sorted[k];
+			int q = (x[i] >= cellX[c] ? 1 : 0) + (y[i] >= cellY[c] ? 2 : 0);
+			quadrant[i] = q;
+			sizes[q]++;
+		}
+		int[] next = { start, start + sizes[0], start + sizes[0] + sizes[1], start + sizes[0] + sizes[1] + sizes[2] };
+		for (int k = start; k < end; k++)
+			scratch[next[quadrant[sorted[k]]]++] = sorted[k];
+		System.arraycopy(scratch, start, sorted, start, end - start);
+		double h = cellHalf[c] / 2;
+		child[c] = cells;
+		int from = start;
+		for (int q = 0; q < 4; q++) {
+			newCell(c, cellX[c] + (q % 2 == 0 ? -h : h), cellY[c] + (q < 2 ? -h : h), h, from, sizes[q]);
+			from += sizes[q];
+		}
+	}
+
+	private int newCell(int from, double cx, double cy, double half, int start, int bodies) {
+		if (cells == cellX.length) {
+			int size = Math.max(64, cells * 2);
+			cellX = Arrays.copyOf(cellX, size);
+			cellY = Arrays.copyOf(cellY, size);
+			cellHalf = Arrays.copyOf(cellHalf, size);
+			comX = Arrays.copyOf(comX, size);
+			comY = Arrays.copyOf(comY, size);
+			sourceRadius = Arrays.copyOf(sourceRadius, size);
+			targetRadius = Arrays.copyOf(targetRadius, size);
+			first = Arrays.copyOf(first, size);
+			count = Arrays.copyOf(count, size);
+			sources = Arrays.copyOf(sources, size);
+			child = Arrays.copyOf(child, size);
+			parent = Arrays.copyOf(parent, size);
+		}
+		cellX[cells] = cx;
+		cellY[cells] = cy;
+		cellHalf[cells] = half;
+		first[cells] = start;
+		count[cells] = bodies;
+		child[cells] = -1;
+		parent[cells] = from;
+		return cells++;
+	}
+
+	// multipole of cell c about its center of mass, M_k = sum of m (-d)^k / k! (d = offset from
+	// the center of mass), from its bodies or from its children's multipoles moved there; about
+	// the center of mass, a lone heavy body (a sun) is exact at any distance. also the radii
+	private void upward(int c, double[] power) {
+		int offset = c * terms;
+		Arrays.fill(multipole, offset, offset + terms, 0.0);
+		sources[c] = 0;
+		sourceRadius[c] = 0.0;
+		targetRadius[c] = 0.0;
+		double m = 0.0, mx = 0.0, my = 0.0;
+		if (child[c] == -1) {
+			boolean[] test = bodies.test;
+			double[] mass = bodies.mass;
+			for (int k = first[c]; k < first[c] + count[c]; k++) {
+				int i = sorted[k];
+				double dx = x[i] - cellX[c], dy = y[i] - cellY[c];
+				targetRadius[c] = Math.max(targetRadius[c], Math.sqrt(dx * dx + dy * dy));
+				if (test[i])
+					continue;
+				sources[c]++;
+				m += mass[i];
+				mx += mass[i] * x[i];
+				my += mass[i] * y[i];
+			}
+			if (sources[c] == 0)
+				return;
+			comX[c] = m > 0 ? mx / m : cellX[c];
+			comY[c] = m > 0 ? my / m : cellY[c];
+			for (int k = first[c]; k < first[c] + count[c]; k++) {
+				int i = sorted[k];
+				if (test[i])
+					continue;
+				double dx = x[i] - comX[c], dy = y[i] - comY[c];
+				sourceRadius[c] = Math.max(sourceRadius[c], Math.sqrt(dx * dx + dy * dy));
+				powers(-dx, -dy, power, true);
+				for (int t = 0; t < terms; t++)
+					multipole[offset + t] += mass[i] * power[t];
+			}
+			return;
+		}
+		for (int q = child[c]; q < child[c] + 4; q++) {
+			if (count[q] > 0) {
+				double dx = cellX[q] - cellX[c], dy = cellY[q] - cellY[c];
+				targetRadius[c] = Math.max(targetRadius[c], targetRadius[q] + Math.sqrt(dx * dx + dy * dy));
+			}
+			if (sources[q] == 0)
+				continue;
+			sources[c] += sources[q];
+			double mq = multipole[q * terms]; // monopole = mass
+			m += mq;
+			mx += mq * comX[q];
+			my += mq * comY[q];
+		}
+		if (sources[c] == 0)
+			return;
+		comX[c] = m > 0 ? mx / m : cellX[c];
+		comY[c] = m > 0 ? my / m : cellY[c];
+		for (int q = child[c]; q < child[c] + 4; q++) {
+			if (sources[q] == 0)
+				continue;
+			double dx = comX[q] - comX[c], dy = comY[q] - comY[c];
+			sourceRadius[c] = Math.max(sourceRadius[c], sourceRadius[q] + Math.sqrt(dx * dx + dy * dy));
+			// M_k = sum over j <= k of M(child)_j (-d)^(k - j) / (k - j)!
+			powers(-dx, -dy, power, true);
+			int childOffset = q * terms;
+			for (int t = 0; t < terms; t++) {
+				double sum = 0.0;
+				for (int j = 0; j <= t; j++)
+					if (ex[j] <= ex[t] && ey[j] <= ey[t])
+						sum += multipole[childOffset + j] * power[index(ex[t] - ex[j], ey[t] - ey[j])];
+				multipole[offset + t] += sum;
+			}
+		}
+	}
+
+	// target cells for the tree walk: the cells of the shallowest level with enough of them
+	// (and the leaves above it)
+	private int tasks(int wanted) {
+		int level = 0;
+		while (level + 1 < depth && levelStart[level + 1] - levelStart[level] < wanted)
+			level++;
+		if (roots.length < cells)
+			roots = new int[cells];
+		int tasks = 0;
+		for (int c = 0; c < levelStart[level + 1]; c++)
+			if (count[c] > 0 && (c >= levelStart[level] || child[c] == -1))
+				roots[tasks++] = c;
+		return tasks;
+	}
+
+	// everything source cell s (and below) does to target cell t (and below)
+	private void walk(int t, int s, double[] derivative, long[] stats, int slot) {
+		if (count[t] == 0 || sources[s] == 0)
+			return;
+		double dx = cellX[t] - comX[s], dy = cellY[t] - comY[s];
+		double r = targetRadius[t] + sourceRadius[s];
+		if (r * r < theta * theta * (dx * dx + dy * dy)) {
+			// L_k += 1 / k! sum over j of D^(k + j)(1/r) M_j
+			derivatives(dx, dy, derivative);
+			int to = t * terms, from = s * terms;
+			for (int k = 0; k < terms; k++) {
+				int degree = ex[k] + ey[k];
+				int fit = (order - degree + 1) * (order - degree + 2) / 2; // multipole terms that fit
+				double l = 0.0;
+				for (int j = 0; j < fit; j++)
+					l += derivative[sum[k * terms + j]] * multipole[from + j];
+				local[to + k] += l * inverseFactorial[k];
+			}
+			stats[slot]++;
+		} else if (child[t] == -1 && child[s] == -1)
+			direct(t, s, stats, slot);
+		else if (child[s] == -1 || (child[t] != -1 && cellHalf[t] >= cellHalf[s])) {
+			for (int q = child[t]; q < child[t] + 4; q++)
+				walk(q, s, derivative, stats, slot);
+		} else {
+			for (int q = child[s]; q < child[s] + 4; q++)
+				walk(t, q, derivative, stats, slot);
+		}
+	}
+
+	// leaf t's bodies pulled by leaf s's sources (scaled units)
+	private void direct(int t, int s, long[] stats, int slot) {
+		double[] mass = bodies.mass, ax = bodies.ax, ay = bodies.ay;
+		boolean[] test = bodies.test;
+		for (int a = first[t]; a < first[t] + count[t]; a++) {
+			int i = sorted[a];
+			double px = x[i], py = y[i];
+			double sumX = 0.0, sumY = 0.0;
+			for (int b = first[s]; b < first[s] + count[s]; b++) {
+				int j = sorted[b];
+				if (j == i || test[j])
+					continue;
+				double dx = x[j] - px;
+				double dy = y[j] - py;
+				double z2 = dx * dx + dy * dy;
+				if (z2 == 0)
+					continue;
+				double f = mass[j] / (z2 * Math.sqrt(z2));
+				sumX += f * dx;
+				sumY += f * dy;
+			}
+			ax[i] += sumX;
+			ay[i] += sumY;
+		}
+		stats[slot + 1] += (long) count[t] * count[s];
+	}
+
+	// cell c's local expansion plus its parent's (moved to c's center); leaves hand theirs to
+	// their bodies and scale the sums to accelerations
+	private void downward(int c, double[] power, double scale) {
+		if (count[c] == 0)
+			return;
+		int offset = c * terms;
+		if (c > 0) {
+			// L_j += sum over k >= j of C(k, j) L(parent)_k e^(k - j) (e = this center minus the parent's)
+			int p = parent[c];
+			int parentOffset = p * terms;
+			powers(cellX[c] - cellX[p], cellY[c] - cellY[p], power, false);
+			for (int j = 0; j < terms; j++) {
+				double s = 0.0;
+				for (int k = j; k < terms; k++)
+					if (ex[k] >= ex[j] && ey[k] >= ey[j])
+						s += binomial[ex[k]][ex[j]] * binomial[ey[k]][ey[j]] * local[parentOffset + k] * power[index(ex[k] - ex[j], ey[k] - ey[j])];
+				local[offset + j] += s;
+			}
+		}
+		if (child[c] != -1)
+			return;
+
+		// gradient of the sum of L_k d^k at every body
+		double[] ax = bodies.ax, ay = bodies.ay;
+		for (int k = first[c]; k < first[c] + count[c]; k++) {
+			int i = sorted[k];
+			powers(x[i] - cellX[c], y[i] - cellY[c], power, false);
+			double sumX = 0.0, sumY = 0.0;
+			for (int t = 1; t < terms; t++) {
+				if (ex[t] > 0)
+					sumX += ex[t] * local[offset + t] * power[index(ex[t] - 1, ey[t])];
+				if (ey[t] > 0)
+					sumY += ey[t] * local[offset + t] * power[index(ex[t], ey[t] - 1)];
+			}
+			ax[i] = scale * (ax[i] + sumX);
+			ay[i] = scale * (ay[i] + sumY);
+		}
+	}
+
+	// power[k] = x^kx y^ky (divided by kx! ky! if divided)
+	private void powers(double x, double y, double[] power, boolean divided) {
+		power[0] = 1.0;
+		for (int t = 1; t < terms; t++) {
+			// one degree lower times x (or y for the pure y terms)
+			power[t] = ex[t] > 0 ? power[index(ex[t] - 1, ey[t])] * x : power[index(ex[t], ey[t] - 1)] * y;
+			if (divided)
+				power[t] *= ex[t] > 0 ? 1.0 / ex[t] : 1.0 / ey[t];
+		}
+	}
+
+	// derivative[k] = d^k (1/r) at (x, y), from the Taylor coefficient recurrence
+	// |k| r^2 b_k + (2|k| - 1) (x b_(k - ex) + y b_(k - ey)) + (|k| - 1) (b_(k - 2ex) + b_(k - 2ey)) = 0
+	// (b_k = d^k (1/r) / k!)
+	private void derivatives(double x, double y, double[] derivative) {
+		double r2 = x * x + y * y;
+		derivative[0] = 1 / Math.sqrt(r2);
+		for (int t = 1; t < terms; t++) {
+			int a = ex[t], b = ey[t], degree = a + b;
+			double sum = 0.0;
+			if (a > 0)
+				sum += x * derivative[index(a - 1, b)];
+			if (b > 0)
+				sum += y * derivative[index(a, b - 1)];
+			sum *= 2 * degree - 1;
+			double second = 0.0;
+			if (a > 1)
+				second += derivative[index(a - 2, b)];
+			if (b > 1)
+				second += derivative[index(a, b - 2)];
+			derivative[t] = -(sum + (degree - 1) * second) / (degree * r2);
+		}
+		for (int t = 1; t < terms; t++)
+			derivative[t] /= inverseFactorial[t];
+	}
+
+	// coefficient of the multi-index (a, b)
+	private int index(int a, int b) {
+		int degree = a + b;
+		return degree * (degree + 1) / 2 + b;
+	}
+
+	// comparing the last call's accelerations against the direct sum on a sample of bodies
+	public void measureError(int samples) {
+		errorRMS = 0.0;
+		errorMax = 0.0;
+		int n = bodies == null ? 0 : bodies.size();
+		errorSamples = Math.min(samples, n);
+		if (errorSamples == 0)
+			return;
+		int sources = bodies.sources();
+		int[] source = bodies.source;
+		double[] x = bodies.sx, y = bodies.sy, m = bodies.mass;
+		double diff2 = 0.0, total2 = 0.0;
+		for (int s = 0; s < errorSamples; s++) {
+			int i = (int) ((long) s * n / errorSamples);
+			// direct sum
+			double dax = 0.0, day = 0.0;
+			for (int k = 0; k < sources; k++) {
+				int j = source[k];
+				if (j == i)
+					continue;
+				double dx = x[j] - x[i];
+				double dy = y[j] - y[i];
+				double d2 = dx * dx + dy * dy;
+				if (d2 == 0)
+					continue;
+				double d = Math.sqrt(d2);
+				double a = G * m[j] / (d2 * d);
+				dax += a * dx;
+				day += a * dy;
+			}
+			double ex = bodies.ax[i] - dax;
+			double ey = bodies.ay[i] - day;
+			double e2 = ex * ex + ey * ey;
+			double a2 = dax * dax + day * day;
+			diff2 += e2;
+			total2 += a2;
+			if (a2 > 0)
+				errorMax = Math.max(errorMax, Math.sqrt(e2 / a2));
+		}
+		if (total2 > 0)
+			errorRMS = Math.sqrt(diff2 / total2);
+	}
+
+	// expansion order (more terms = more accurate and slower)
+	public void setOrder(int order) {
+		order = Math.max(1, Math.min(max_order, order));
+		if (order == this.order)
+			return;
+		this.order = order;
+		terms = (order + 1) * (order + 2) / 2;
+		ex = new int[terms];
+		ey = new int[terms];
+		inverseFactorial = new double[terms];
+		for (int degree = 0, t = 0; degree <= order; degree++) {
+			for (int b = 0; b <= degree; b++, t++) {
+				ex[t] = degree - b;
+				ey[t] = b;
+				inverseFactorial[t] = 1.0 / (factorial(ex[t]) * factorial(ey[t]));
+			}
+		}
+		binomial = new double[order + 1][order + 1];
+		for (int a = 0; a <= order; a++) {
+			binomial[a][0] = 1.0;
+			for (int b = 1; b <= a; b++)
+				binomial[a][b] = binomial[a - 1][b - 1] + (b < a ? binomial[a - 1][b] : 0.0);
+		}
+		sum = new int[terms * terms];
+		for (int k = 0; k < terms; k++)
+			for (int t = 0; t < terms; t++)
+				sum[k * terms + t] = ex[k] + ex[t] + ey[k] + ey[t] <= order ? index(ex[k] + ex[t], ey[k] + ey[t]) : -1;
+		multipole = new double[0]; // resized with the next tree
+		local = new double[0];
+	}
+
+	private static double factorial(int k) {
+		double f = 1.0;
+		for (int i = 2; i <= k; i++)
+			f *= i;
+		return f;
+	}
+
+	public int getOrder() {
+		return order;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public int getCells() {
+		return cells;
+	}
+
+	// expansions exchanged and body pairs summed directly in the last call
+	public long getInteractions() {
+		return interactions;
+	}
+
+	public long getPairs() {
+		return pairs;
+	}
+
+	public double getErrorRMS() {
+		return errorRMS;
+	}
+
+	public double getErrorMax() {
+		return errorMax;
+	}
+
+	public int getErrorSamples() {
+		return errorSamples;
+	}
+
+}
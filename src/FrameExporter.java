@@ -0,0 +1,260 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+// saves rendered frames as PNGs without encoding them on the event thread: the panel's frame is
+// copied into a pooled image and encoded on worker threads. the pool only has a few images, so
+// when all of them are waiting to be encoded a frame of a sequence is dropped (DROP, the display
+// keeps its speed) or waited for (WAIT, every frame is kept); a screenshot always waits
+public class FrameExporter {
+
+	public enum Policy {
+		DROP, WAIT
+	}
+
+	private final int width, height;
+	private final int threads;
+	private final ExecutorService workers;
+	private final ArrayBlockingQueue<BufferedImage> free; // images that can be filled
+	private final int pool;
+	private int created = 0; // images are only made once they're needed
+	private final AtomicInteger queued = new AtomicInteger(0);
+	private final float compression = 0.75f; // png deflate effort (1 = fastest, 0 = smallest)
+	private final DateTimeFormatter stamp = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss-SSS");
+
+	// requests (event thread)
+	private boolean screenshot = false;
+	private volatile File sequence = null; // directory of the sequence being exported
+	private Policy policy = Policy.DROP;
+	private int next = 0; // next frame of the sequence
+
+	// stats
+	private volatile String status = "none";
+	private final AtomicLong encoded = new AtomicLong(0), bytes = new AtomicLong(0), encodeTime = new AtomicLong(0); // ns summed over the workers
+	private long dropped = 0, waited = 0, copyTime = 0, copies = 0; // waited and copyTime in ns
+
+	// frames of width x height, encoded on threads workers, with pool images to copy them into
+	public FrameExporter(int width, int height, int threads, int pool) {
+		this.width = width;
+		this.height = height;
+		this.threads = threads;
+		this.pool = pool;
+		workers = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "Frame export");
+			t.setDaemon(true);
+			t.setPriority(Thread.MIN_PRIORITY);
+			return t;
+		});
+		free = new ArrayBlockingQueue<>(pool);
+	}
+
+	// half the cores, and as many images as fit in about 256 MB (at least two per thread)
+	public FrameExporter(int width, int height) {
+		this(width, height, Math.max(1, Runtime.getRuntime().availableProcessors() / 2), poolSize(width, height));
+	}
+
+	private static int poolSize(int width, int height) {
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+		long frameBytes = 4L * width * height;
+		return (int) Math.max(2, Math.min(2 * threads, (256L << 20) / frameBytes));
+	}
+
+	// an image the panel can draw into (same size and layout as the pool's, so copying is one arraycopy)
+	public BufferedImage image() {
+		return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+	}
+
+	// whether the next frame should be drawn into an image and handed to capture
+	public boolean isCapturing() {
+		return screenshot || sequence != null;
+	}
+
+	// saves the next frame to screenshot-<date>.png
+	public void requestScreenshot() {
+		screenshot = true;
+	}
+
+	// saves every frame to directory/frame-NNNNNN.png until stopped
+	public void startSequence(File directory, Policy policy) {
+		directory.mkdirs();
+		sequence = directory;
+		this.policy = policy;
+		next = 0;
+		status = "exporting to " + directory;
+	}
+
+	public void stopSequence() {
+		if (sequence != null)
+			status = "exported " + next + " frames to " + sequence;
+		sequence = null;
+	}
+
+	// a new frames-<date> directory, or stops the one being exported
+	public void toggleSequence(Policy policy) {
+		if (sequence != null)
+			stopSequence();
+		else
+			startSequence(new File("frames-" + LocalDateTime.now().format(stamp)), policy);
+	}
+
+	// copies a rendered frame (from image()) and queues it for encoding (event thread)
+	public void capture(BufferedImage frame) {
+		if (screenshot) {
+			screenshot = false;
+			submit(frame, Policy.WAIT, new File("screenshot-" + LocalDateTime.now().format(stamp) + ".png"));
+		}
+		if (sequence != null && submit(frame, policy, new File(sequence, String.format("frame-%06d.png", next))))
+			next++;
+	}
+
+	// takes a pooled image (per the policy), copies the frame into it and has a worker encode it
+	private boolean submit(BufferedImage frame, Policy policy, File file) {
+		long start = System.nanoTime();
+		BufferedImage copy = free.poll();
+		if (copy == null && created < pool) {
+			created++;
+			copy = image();
+		}
+		if (copy == null) {
+			if (policy == Policy.DROP) {
+				dropped++;
+				return false;
+			}
+			try {
+				copy = free.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			waited += System.nanoTime() - start;
+		}
+		long copyStart = System.nanoTime();
+		int[] from = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+		int[] to = ((DataBufferInt) copy.getRaster().getDataBuffer()).getData();
+		System.arraycopy(from, 0, to, 0, to.length);
+		copyTime += System.nanoTime() - copyStart;
+		copies++;
+
+		final BufferedImage image = copy;
+		queued.incrementAndGet();
+		workers.execute(() -> encode(image, file));
+		return true;
+	}
+
+	private void encode(BufferedImage image, File file) {
+		long start = System.nanoTime();
+		try {
+			write(image, file);
+			encodeTime.addAndGet(System.nanoTime() - start);
+			bytes.addAndGet(file.length());
+			encoded.incrementAndGet();
+			if (sequence == null)
+				status = "saved " + file;
+		} catch (IOException | RuntimeException e) {
+			status = "couldn't save " + file + ": " + e.getMessage();
+			System.err.println("Couldn't save " + file + ": " + e.getMessage());
+		} finally {
+			queued.decrementAndGet();
+			free.add(image);
+		}
+	}
+
+	// png with a lighter deflate than ImageIO's default (most of the encoding time)
+	private void write(BufferedImage image, File file) throws IOException {
+		Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("png");
+		if (!writers.hasNext())
+			throw new IOException("no png writer");
+		ImageWriter writer = writers.next();
+		file.delete(); // the stream doesn't truncate
+		try (ImageOutputStream out = ImageIO.createImageOutputStream(file)) {
+			writer.setOutput(out);
+			ImageWriteParam param = writer.getDefaultWriteParam();
+			if (param.canWriteCompressed()) {
+				param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+				param.setCompressionQuality(compression);
+			}
+			writer.write(null, new IIOImage(image, null, null), param);
+		} finally {
+			writer.dispose();
+		}
+	}
+
+	// waits for the frames that were queued to be encoded (before exiting)
+	public void finish() {
+		stopSequence();
+		workers.shutdown();
+		try {
+			workers.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public boolean isExporting() {
+		return sequence != null;
+	}
+
+	// last thing that happened
+	public String getStatus() {
+		return status;
+	}
+
+	// frames copied and waiting to be (or being) encoded
+	public int getQueued() {
+		return queued.get();
+	}
+
+	public int getPoolSize() {
+		return pool;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public long getEncoded() {
+		return encoded.get();
+	}
+
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	// frames per second the workers can encode together
+	public double getRate() {
+		long time = encodeTime.get();
+		return time == 0 ? 0.0 : encoded.get() * threads / (time / 1e9);
+	}
+
+	// frames of a sequence dropped because every pooled image was still being encoded
+	public long getDropped() {
+		return dropped;
+	}
+
+	// ms the event thread waited for a pooled image
+	public double getWaited() {
+		return waited / 1e6;
+	}
+
+	// average ms the event thread spent copying a frame
+	public double getCopyTime() {
+		return copies == 0 ? 0.0 : copyTime / 1e6 / copies;
+	}
+
+}
@@ -0,0 +1,6 @@
+// gets the bodies once per saved frame (the rewind history and the trajectory recorder)
+public interface FrameListener {
+
+	void frame(BodyStore bodies, double time);
+
+}
@@ -0,0 +1,293 @@
+// direct-sum gravity that visits each pair of bodies once (Newton's third law)
+public class Gravity {
+
+	public static final double G = 6.6743 * Math.pow(10, -11); // m^3 kg^-1 s^-2
+
+	// the pair loops of a row of bodies (the direct sums below are made of these)
+	public interface Rows {
+		void row(BodyStore bodies, int i, double[] ax, double[] ay);
+
+		void sourceRow(BodyStore bodies, int a, int sources, double[] ax, double[] ay);
+
+		void testRow(BodyStore bodies, int i, int sources);
+
+		int lanes(); // pairs done at once
+	}
+
+	private static final Rows scalar = new Rows() {
+		public void row(BodyStore bodies, int i, double[] ax, double[] ay) {
+			Gravity.row(bodies, i, ax, ay);
+		}
+
+		public void sourceRow(BodyStore bodies, int a, int sources, double[] ax, double[] ay) {
+			Gravity.sourceRow(bodies, a, sources, ax, ay);
+		}
+
+		public void testRow(BodyStore bodies, int i, int sources) {
+			Gravity.testRow(bodies, i, sources);
+		}
+
+		public int lanes() {
+			return 1;
+		}
+	};
+	// SIMD rows (src-vector/GravityVector.java), when they were built and the JVM runs with
+	// --add-modules jdk.incubator.vector; null otherwise
+	private static final Rows vector = loadVector();
+	private static volatile Rows rows = vector != null ? vector : scalar;
+
+	// per-worker accumulation buffers for the multithreaded kernel
+	private double[][] bufferX = new double[0][];
+	private double[][] bufferY = new double[0][];
+
+	// single-threaded: sets every body's acceleration
+	public static void accelerate(BodyStore bodies) {
+		Rows rows = Gravity.rows;
+		int n = bodies.size();
+		int sources = bodies.sources();
+		double[] ax = bodies.ax, ay = bodies.ay;
+		for (int i = 0; i < n; i++) {
+			ax[i] = 0.0;
+			ay[i] = 0.0;
+		}
+		if (sources == n) {
+			for (int i = 0; i < n; i++)
+				rows.row(bodies, i, ax, ay);
+			return;
+		}
+		for (int a = 0; a < sources; a++)
+			rows.sourceRow(bodies, a, sources, ax, ay);
+		for (int i = 0; i < n; i++)
+			if (bodies.test[i])
+				rows.testRow(bodies, i, sources);
+	}
+
+	// multithreaded: each worker adds into its own buffers, which are summed at the end
+	public void accelerate(BodyStore bodies, WorkerPool workers) {
+		Rows rows = Gravity.rows;
+		int n = bodies.size();
+		int sources = bodies.sources();
+		int slots = workers.getWorkers();
+		if (bufferX.length != slots || bufferX[0].length < n) {
+			int size = Math.max(n, bufferX.length == 0 ? 0 : bufferX[0].length * 2);
+			bufferX = new double[slots][size];
+			bufferY = new double[slots][size];
+		}
+
+		// row i has n - 1 - i pairs, so rows are folded (i with n - 1 - i) to even out the chunks
+		int half = (sources + 1) / 2;
+		workers.run(half, (start, end) -> {
+			int slot = workers.slot();
+			double[] ax = bufferX[slot], ay = bufferY[slot];
+			for (int i = start; i < end; i++) {
+				if (sources == n) {
+					rows.row(bodies, i, ax, ay);
+					if (n - 1 - i != i)
+						rows.row(bodies, n - 1 - i, ax, ay);
+				} else {
+					rows.sourceRow(bodies, i, sources, ax, ay);
+					if (sources - 1 - i != i)
+						rows.sourceRow(bodies, sources - 1 - i, sources, ax, ay);
+				}
+			}
+		});
+
+		// reducing (and clearing) the buffers
+		workers.run(n, (start, end) -> {
+			double[] ax = bodies.ax, ay = bodies.ay;
+			for (int i = start; i < end; i++) {
+				double sumX = 0.0, sumY = 0.0;
+				for (int s = 0; s < slots; s++) {
+					sumX += bufferX[s][i];
+					sumY += bufferY[s][i];
+					bufferX[s][i] = 0.0;
+					bufferY[s][i] = 0.0;
+				}
+				ax[i] = sumX;
+				ay[i] = sumY;
+			}
+		});
+
+		// test particles (pulled by the sources only)
+		if (sources < n)
+			workers.run(n, (start, end) -> {
+				for (int i = start; i < end; i++)
+					if (bodies.test[i])
+						rows.testRow(bodies, i, sources);
+			});
+	}
+
+	// multithreaded: accelerations and jerks (m/s^3) of the listed bodies only (from every body)
+	public void accelerate(BodyStore bodies, int[] targets, int count, double[] jx, double[] jy, WorkerPool workers) {
+		int sources = bodies.sources();
+		int[] source = bodies.source;
+		double[] sx = bodies.sx, sy = bodies.sy, vx = bodies.vx, vy = bodies.vy, mass = bodies.mass;
+		workers.run(count, (start, end) -> {
+			for (int k = start; k < end; k++) {
+				int i = targets[k];
+				double px = sx[i], py = sy[i], pvx = vx[i], pvy = vy[i];
+				double sumX = 0.0, sumY = 0.0, sumJX = 0.0, sumJY = 0.0;
+				for (int b = 0; b < sources; b++) {
+					int j = source[b];
+					double x = sx[j] - px;
+					double y = sy[j] - py;
+					double z2 = x * x + y * y;
+					if (z2 == 0)
+						continue;
+					double f = G * mass[j] / (z2 * Math.sqrt(z2)); // G m / z^3
+					double u = vx[j] - pvx;
+					double v = vy[j] - pvy;
+					double rv = 3 * (x * u + y * v) / z2;
+					sumX += f * x;
+					sumY += f * y;
+					sumJX += f * (u - rv * x);
+					sumJY += f * (v - rv * y);
+				}
+				bodies.ax[i] = sumX;
+				bodies.ay[i] = sumY;
+				jx[i] = sumJX;
+				jy[i] = sumJY;
+			}
+		});
+	}
+
+	// total energy (kinetic plus potential); a good integrator keeps it nearly constant
+	public double energy(BodyStore bodies, WorkerPool workers) {
+		int n = bodies.size();
+		bodies.sources();
+		double[] partial = new double[workers.getWorkers()]; // potential energy per worker
+		int half = (n + 1) / 2;
+		workers.run(half, (start, end) -> {
+			double sum = 0.0;
+			for (int i = start; i < end; i++) {
+				sum += potential(bodies, i);
+				if (n - 1 - i != i)
+					sum += potential(bodies, n - 1 - i);
+			}
+			partial[workers.slot()] += sum;
+		});
+		double energy = 0.0;
+		for (double p : partial)
+			energy += p;
+		double[] vx = bodies.vx, vy = bodies.vy, mass = bodies.mass;
+		for (int i = 0; i < n; i++)
+			energy += 0.5 * mass[i] * (vx[i] * vx[i] + vy[i] * vy[i]);
+		return energy;
+	}
+
+	// potential energy of the pairs (i, j) with j > i (two test particles don't pull each other)
+	private static double potential(BodyStore bodies, int i) {
+		int n = bodies.size();
+		double[] sx = bodies.sx, sy = bodies.sy, mass = bodies.mass;
+		boolean[] test = bodies.test;
+		double px = sx[i], py = sy[i];
+		double sum = 0.0;
+		for (int j = i + 1; j < n; j++) {
+			if (test[i] && test[j])
+				continue;
+			double x = sx[j] - px;
+			double y = sy[j] - py;
+			double z2 = x * x + y * y;
+			if (z2 == 0)
+				continue;
+			sum += mass[j] / Math.sqrt(z2);
+		}
+		return -G * mass[i] * sum;
+	}
+
+	// pairs (i, j) with j > i, adding equal and opposite accelerations into ax/ay
+	private static void row(BodyStore bodies, int i, double[] ax, double[] ay) {
+		int n = bodies.size();
+		double[] sx = bodies.sx, sy = bodies.sy, mass = bodies.mass;
+		double px = sx[i], py = sy[i], mi = mass[i];
+		double sumX = 0.0, sumY = 0.0;
+		for (int j = i + 1; j < n; j++) {
+			double x = sx[j] - px;
+			double y = sy[j] - py;
+			double z2 = x * x + y * y;
+			if (z2 == 0)
+				continue;
+			double f = G / (z2 * Math.sqrt(z2)); // G / z^3
+			double fx = f * x, fy = f * y;
+			sumX += mass[j] * fx;
+			sumY += mass[j] * fy;
+			ax[j] -= mi * fx;
+			ay[j] -= mi * fy;
+		}
+		ax[i] += sumX;
+		ay[i] += sumY;
+	}
+
+	// pairs of source[a] with the sources after it (same as row, through the source list)
+	private static void sourceRow(BodyStore bodies, int a, int sources, double[] ax, double[] ay) {
+		int[] source = bodies.source;
+		double[] sx = bodies.sx, sy = bodies.sy, mass = bodies.mass;
+		int i = source[a];
+		double px = sx[i], py = sy[i], mi = mass[i];
+		double sumX = 0.0, sumY = 0.0;
+		for (int b = a + 1; b < sources; b++) {
+			int j = source[b];
+			double x = sx[j] - px;
+			double y = sy[j] - py;
+			double z2 = x * x + y * y;
+			if (z2 == 0)
+				continue;
+			double f = G / (z2 * Math.sqrt(z2)); // G / z^3
+			double fx = f * x, fy = f * y;
+			sumX += mass[j] * fx;
+			sumY += mass[j] * fy;
+			ax[j] -= mi * fx;
+			ay[j] -= mi * fy;
+		}
+		ax[i] += sumX;
+		ay[i] += sumY;
+	}
+
+	// sets test particle i's acceleration from the sources
+	private static void testRow(BodyStore bodies, int i, int sources) {
+		int[] source = bodies.source;
+		double[] sx = bodies.sx, sy = bodies.sy, mass = bodies.mass;
+		double px = sx[i], py = sy[i];
+		double sumX = 0.0, sumY = 0.0;
+		for (int k = 0; k < sources; k++) {
+			int j = source[k];
+			double x = sx[j] - px;
+			double y = sy[j] - py;
+			double z2 = x * x + y * y;
+			if (z2 == 0)
+				continue;
+			double f = G * mass[j] / (z2 * Math.sqrt(z2)); // G m / z^3
+			sumX += f * x;
+			sumY += f * y;
+		}
+		bodies.ax[i] = sumX;
+		bodies.ay[i] = sumY;
+	}
+
+	private static Rows loadVector() {
+		try {
+			return (Rows) Class.forName("GravityVector").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) { // not built, or the module isn't there
+			return null;
+		}
+	}
+
+	public static boolean isVectorAvailable() {
+		return vector != null;
+	}
+
+	// whether the direct sums use the SIMD rows (if they're available)
+	public static void setVectorized(boolean vectorized) {
+		rows = vectorized && vector != null ? vector : scalar;
+	}
+
+	public static boolean isVectorized() {
+		return rows == vector;
+	}
+
+	// pairs each row loop does at once (1 = scalar)
+	public static int getLanes() {
+		return rows.lanes();
+	}
+
+}
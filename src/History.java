@@ -0,0 +1,301 @@
+import java.awt.Color;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+
+// rewind history in a fixed-size byte arena used as a ring; keyframes hold every body's
+// properties and the frames in between only hold float offsets from their keyframe (or just
+// their time, when a reversible integrator can get back to them from the keyframe)
+public class History implements FrameListener {
+
+	private final int key_interval = 64; // most frames from one keyframe to the next (keeps the offsets small)
+	private final int header_bytes = 8 + 4; // time, number of bodies (-1 = time only)
+	private final int key_bytes = 6 * 8 + 4 + 1; // per body: sx, sy, vx, vy, mass, radius, color, test particle
+	private final int delta_bytes = 4 * 4; // per body: sx, sy, vx, vy offsets
+
+	private boolean full = true; // frames between keyframes keep their offsets (see setFull)
+
+	private final ByteBuffer arena;
+	private int write = 0; // where the next frame goes
+	private long used = 0; // bytes held by frames
+
+	// frames, oldest first (circular; frame k is at slot (head + k) % capacity)
+	private int head = 0, count = 0;
+	private long first = 0; // number of the oldest frame (frames are numbered from the last clear)
+	private int[] offset = new int[64], length = new int[64];
+	private long[] key = new long[64]; // number of the frame's keyframe
+	private Body2D[][] handles = new Body2D[64][]; // keyframes only
+	private String[][] names = new String[64][]; // keyframes only (merges can rename a body)
+	private final HashMap<Integer, Color> colors = new HashMap<>();
+	private int keyframes = 0;
+
+	// the keyframe the store currently matches (nothing changed since it was saved or restored)
+	private long lastKey = -1;
+	private BodyStore keyStore = null;
+	private long keyVersion = -1;
+
+	public History(int megabytes) {
+		arena = ByteBuffer.allocate((int) Math.min(Integer.MAX_VALUE - 8, megabytes * 1048576L));
+	}
+
+	// saves the bodies' current state
+	public void add(BodyStore bodies, double time) {
+		add(bodies, time, true);
+	}
+
+	// saves the bodies' current state as a frame from the simulation
+	public void frame(BodyStore bodies, double time) {
+		add(bodies, time, full);
+	}
+
+	// whether frames from frame() keep their offsets (not needed when a reversible integrator can
+	// get back to them from their keyframe)
+	public void setFull(boolean full) {
+		this.full = full;
+	}
+
+	// saves the bodies' current state; without full, frames between keyframes only keep their time
+	public void add(BodyStore bodies, double time, boolean full) {
+		int n = bodies.size();
+		long number = first + count;
+		// a keyframe's deltas go when it does, so one keyframe and its deltas stay well under the budget
+		long interval = Math.min(key_interval, (arena.capacity() / 8 - n * (long) key_bytes) / (header_bytes + n * (long) delta_bytes));
+		boolean keyframe = count == 0 || lastKey < first || key[slot(count - 1)] != lastKey || bodies != keyStore || bodies.getVersion() != keyVersion || number - lastKey >= interval;
+		int size;
+		while (true) {
+			size = header_bytes + (keyframe ? n * key_bytes : full ? n * delta_bytes : 0);
+			if (size > arena.capacity()) { // doesn't fit at all
+				clear();
+				return;
+			}
+
+			makeRoom(size);
+			if (keyframe || lastKey >= first)
+				break;
+			keyframe = true; // the keyframe was just overwritten
+		}
+		if (count == offset.length)
+			grow();
+
+		// writing
+		int s = slot(count);
+		int p = write;
+		offset[s] = p;
+		length[s] = size;
+		arena.putDouble(p, time);
+		arena.putInt(p + 8, keyframe || full ? n : -1);
+		p += header_bytes;
+		if (keyframe) {
+			handles[s] = new Body2D[n];
+			names[s] = new String[n];
+			for (int i = 0; i < n; i++) {
+				handles[s][i] = bodies.get(i);
+				names[s][i] = handles[s][i].getStoredName();
+				arena.putDouble(p, bodies.sx[i]);
+				arena.putDouble(p + 8, bodies.sy[i]);
+				arena.putDouble(p + 16, bodies.vx[i]);
+				arena.putDouble(p + 24, bodies.vy[i]);
+				arena.putDouble(p + 32, bodies.mass[i]);
+				arena.putDouble(p + 40, bodies.radius[i]);
+				arena.putInt(p + 48, handles[s][i].getColor().getRGB());
+				arena.put(p + 52, (byte) (handles[s][i].isTestParticle() ? 1 : 0));
+				p += key_bytes;
+			}
+			key[s] = number;
+			keyframes++;
+			lastKey = number;
+			keyStore = bodies;
+			keyVersion = bodies.getVersion();
+		} else if (!full) {
+			handles[s] = null;
+			names[s] = null;
+			key[s] = lastKey;
+		} else {
+			handles[s] = null;
+			names[s] = null;
+			int q = offset[slot((int) (lastKey - first))] + header_bytes;
+			for (int i = 0; i < n; i++) {
+				arena.putFloat(p, (float) (bodies.sx[i] - arena.getDouble(q)));
+				arena.putFloat(p + 4, (float) (bodies.sy[i] - arena.getDouble(q + 8)));
+				arena.putFloat(p + 8, (float) (bodies.vx[i] - arena.getDouble(q + 16)));
+				arena.putFloat(p + 12, (float) (bodies.vy[i] - arena.getDouble(q + 24)));
+				p += delta_bytes;
+				q += key_bytes;
+			}
+			key[s] = lastKey;
+		}
+		write += size;
+		used += size;
+		count++;
+	}
+
+	// puts frame (0 = oldest) back into the store and returns its time
+	public double restore(int frame, BodyStore bodies) {
+		if (!isFull(frame))
+			throw new IllegalArgumentException("Frame " + frame + " only has its time");
+		int s = slot(frame);
+		long keyNumber = key[s];
+		int k = slot((int) (keyNumber - first));
+		int n = arena.getInt(offset[k] + 8);
+
+		// bodies (only if they changed since the keyframe was saved or restored)
+		boolean rebuild = keyNumber != lastKey || bodies != keyStore || bodies.getVersion() != keyVersion;
+		if (rebuild) {
+			bodies.clear();
+			int q = offset[k] + header_bytes;
+			for (int i = 0; i < n; i++) {
+				// the handle as it was at the keyframe (unbound by clear, so this doesn't touch a store)
+				Body2D body = handles[k][i];
+				body.setStoredName(names[k][i]);
+				body.setTestParticle(arena.get(q + 52) != 0);
+				int rgb = arena.getInt(q + 48);
+				if (body.getColor().getRGB() != rgb)
+					body.setColor(Checkpoint.color(rgb, colors));
+				body.bind(bodies, bodies.add(body, arena.getDouble(q + 32), arena.getDouble(q + 40), 0.0, 0.0, 0.0, 0.0));
+				q += key_bytes;
+			}
+			lastKey = keyNumber;
+			keyStore = bodies;
+			keyVersion = bodies.getVersion();
+		}
+
+		// positions and velocities
+		int q = offset[k] + header_bytes;
+		for (int i = 0; i < n; i++) {
+			bodies.sx[i] = arena.getDouble(q);
+			bodies.sy[i] = arena.getDouble(q + 8);
+			bodies.vx[i] = arena.getDouble(q + 16);
+			bodies.vy[i] = arena.getDouble(q + 24);
+			bodies.ax[i] = 0.0;
+			bodies.ay[i] = 0.0;
+			q += key_bytes;
+		}
+		if (s != k) {
+			int p = offset[s] + header_bytes;
+			for (int i = 0; i < n; i++) {
+				bodies.sx[i] += arena.getFloat(p);
+				bodies.sy[i] += arena.getFloat(p + 4);
+				bodies.vx[i] += arena.getFloat(p + 8);
+				bodies.vy[i] += arena.getFloat(p + 12);
+				p += delta_bytes;
+			}
+		}
+		return arena.getDouble(offset[s]);
+	}
+
+	// whether restore can bring the frame back (or just its keyframe)
+	public boolean isFull(int frame) {
+		return arena.getInt(offset[slot(frame)] + 8) >= 0;
+	}
+
+	public double getTime(int frame) {
+		return arena.getDouble(offset[slot(frame)]);
+	}
+
+	// frame of the keyframe the frame depends on
+	public int getKeyframe(int frame) {
+		return (int) (key[slot(frame)] - first);
+	}
+
+	// deletes every frame after frame
+	public void truncate(int frame) {
+		while (count > frame + 1) {
+			int s = slot(count - 1);
+			if (handles[s] != null) {
+				handles[s] = null;
+				names[s] = null;
+				keyframes--;
+			}
+			used -= length[s];
+			count--;
+		}
+		write = count == 0 ? 0 : offset[slot(count - 1)] + length[slot(count - 1)];
+	}
+
+	public void clear() {
+		Arrays.fill(handles, null);
+		Arrays.fill(names, null);
+		head = count = keyframes = 0;
+		first = 0;
+		write = 0;
+		used = 0;
+		lastKey = -1;
+		keyStore = null;
+	}
+
+	// drops the oldest frame, and with a keyframe every frame that depends on it
+	private void evict() {
+		long number = first;
+		do {
+			if (handles[head] != null) {
+				handles[head] = null;
+				names[head] = null;
+				keyframes--;
+			}
+			used -= length[head];
+			head = (head + 1) % offset.length;
+			count--;
+			first++;
+		} while (count > 0 && key[head] == number);
+	}
+
+	// evicts old frames until size bytes fit at write (frames don't wrap around the end of the arena)
+	private void makeRoom(int size) {
+		while (count > 0) {
+			int start = offset[head];
+			if (start < write) { // free space after the newest frame
+				if (write + size <= arena.capacity())
+					return;
+				write = 0;
+			} else if (write + size <= start) // free space up to the oldest frame
+				return;
+			else
+				evict();
+		}
+		if (write + size > arena.capacity())
+			write = 0;
+	}
+
+	private int slot(int frame) {
+		return (head + frame) % offset.length;
+	}
+
+	private void grow() {
+		int capacity = offset.length * 2;
+		int[] newOffset = new int[capacity], newLength = new int[capacity];
+		long[] newKey = new long[capacity];
+		Body2D[][] newHandles = new Body2D[capacity][];
+		String[][] newNames = new String[capacity][];
+		for (int i = 0; i < count; i++) {
+			int s = slot(i);
+			newOffset[i] = offset[s];
+			newLength[i] = length[s];
+			newKey[i] = key[s];
+			newHandles[i] = handles[s];
+			newNames[i] = names[s];
+		}
+		offset = newOffset;
+		length = newLength;
+		key = newKey;
+		handles = newHandles;
+		names = newNames;
+		head = 0;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public int getKeyframes() {
+		return keyframes;
+	}
+
+	public long getUsedBytes() {
+		return used;
+	}
+
+	public long getBudgetBytes() {
+		return arena.capacity();
+	}
+
+}
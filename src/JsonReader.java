@@ -0,0 +1,363 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+// pull parser for JSON: the caller asks for one token at a time and the text is read from the
+// stream as it goes, so a file is never held in memory or turned into a tree first
+public class JsonReader {
+
+	public enum Token {
+		BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END
+	}
+
+	// where the parser is (one per open object or array, plus the document)
+	private final int document_start = 0, document_end = 1;
+	private final int empty_array = 2, array = 3; // array: after an element
+	private final int empty_object = 4, object = 5, name = 6; // object: after a value, name: after a name
+
+	private final Reader in;
+	private final char[] buffer = new char[65536];
+	private int position = 0, limit = 0;
+	private long offset = 0; // characters before the buffer
+	private int line = 1;
+	private long lineStart = 0; // offset of the line's first character
+
+	private int[] stack = new int[32];
+	private int depth = 1;
+	private Token peeked = null;
+	private final StringBuilder text = new StringBuilder(); // the peeked name or string
+	private char[] number = new char[32]; // the peeked number
+	private int numberLength = 0;
+	private boolean bool;
+	private static final double[] powers = new double[23]; // exact powers of ten
+	static {
+		powers[0] = 1.0;
+		for (int k = 1; k < powers.length; k++)
+			powers[k] = powers[k - 1] * 10;
+	}
+
+	public JsonReader(Reader in) {
+		this.in = in;
+		stack[0] = document_start;
+	}
+
+	// type of the next token (without reading it)
+	public Token peek() throws IOException {
+		if (peeked != null)
+			return peeked;
+		int context = stack[depth - 1];
+		int c;
+		if (context == document_start) {
+			stack[depth - 1] = document_end;
+			return peeked = value(skipWhitespace());
+		} else if (context == document_end) {
+			if (skipWhitespace() != -1)
+				throw error("Expected the end of the document");
+			return peeked = Token.END;
+		} else if (context == empty_array || context == array) {
+			c = skipWhitespace();
+			if (c == ']') {
+				position++;
+				return peeked = Token.END_ARRAY;
+			}
+			if (context == array) {
+				if (c != ',')
+					throw error("Expected ',' or ']'");
+				position++;
+				c = skipWhitespace();
+			}
+			stack[depth - 1] = array;
+			return peeked = value(c);
+		} else if (context == empty_object || context == object) {
+			c = skipWhitespace();
+			if (c == '}') {
+				position++;
+				return peeked = Token.END_OBJECT;
+			}
+			if (context == object) {
+				if (c != ',')
+					throw error("Expected ',' or '}'");
+				position++;
+				c = skipWhitespace();
+			}
+			if (c != '"')
+				throw error("Expected a name");
+			position++;
+			readString();
+			stack[depth - 1] = name;
+			return peeked = Token.NAME;
+		} else { // after a name
+			if (skipWhitespace() != ':')
+				throw error("Expected ':'");
+			position++;
+			stack[depth - 1] = object;
+			return peeked = value(skipWhitespace());
+		}
+	}
+
+	// reads the start of the value beginning with c
+	private Token value(int c) throws IOException {
+		if (c == '{' || c == '[') {
+			position++;
+			return c == '{' ? Token.BEGIN_OBJECT : Token.BEGIN_ARRAY;
+		} else if (c == '"') {
+			position++;
+			readString();
+			return Token.STRING;
+		} else if (c == 't' || c == 'f' || c == 'n') {
+			String word = c == 't' ? "true" : c == 'f' ? "false" : "null";
+			for (int k = 0; k < word.length(); k++) {
+				if (read() != word.charAt(k))
+					throw error("Expected " + word);
+			}
+			bool = c == 't';
+			return c == 'n' ? Token.NULL : Token.BOOLEAN;
+		} else if (c == '-' || (c >= '0' && c <= '9')) {
+			numberLength = 0;
+			while (true) {
+				int d = peekChar();
+				if (!((d >= '0' && d <= '9') || d == '-' || d == '+' || d == '.' || d == 'e' || d == 'E'))
+					break;
+				if (numberLength == number.length)
+					number = Arrays.copyOf(number, numberLength * 2);
+				number[numberLength++] = (char) d;
+				position++;
+			}
+			return Token.NUMBER;
+		} else if (c == -1)
+			throw error("Unexpected end of the document");
+		throw error("Unexpected character '" + (char) c + "'");
+	}
+
+	public void beginObject() throws IOException {
+		expect(Token.BEGIN_OBJECT);
+		push(empty_object);
+	}
+
+	public void endObject() throws IOException {
+		expect(Token.END_OBJECT);
+		depth--;
+	}
+
+	public void beginArray() throws IOException {
+		expect(Token.BEGIN_ARRAY);
+		push(empty_array);
+	}
+
+	public void endArray() throws IOException {
+		expect(Token.END_ARRAY);
+		depth--;
+	}
+
+	// whether the current object or array has another element
+	public boolean hasNext() throws IOException {
+		Token token = peek();
+		return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END;
+	}
+
+	public String nextName() throws IOException {
+		expect(Token.NAME);
+		return text.toString();
+	}
+
+	public String nextString() throws IOException {
+		expect(Token.STRING);
+		return text.toString();
+	}
+
+	public boolean nextBoolean() throws IOException {
+		expect(Token.BOOLEAN);
+		return bool;
+	}
+
+	public void nextNull() throws IOException {
+		expect(Token.NULL);
+	}
+
+	// the next number; up to 15 digits and powers of ten up to 22 are exact in doubles, so
+	// those are done by hand (most numbers) and only the rest go through a String
+	public double nextDouble() throws IOException {
+		if (peek() != Token.NUMBER)
+			throw error("Expected a number but was " + peeked);
+		peeked = null;
+		int k = 0;
+		boolean negative = number[0] == '-';
+		if (negative)
+			k++;
+		long mantissa = 0;
+		int digits = 0, scale = 0;
+		boolean simple = k < numberLength && number[k] >= '0' && number[k] <= '9';
+		for (; k < numberLength && number[k] >= '0' && number[k] <= '9'; k++, digits++)
+			mantissa = mantissa * 10 + (number[k] - '0');
+		if (k < numberLength && number[k] == '.') {
+			k++;
+			simple &= k < numberLength && number[k] >= '0' && number[k] <= '9';
+			for (; k < numberLength && number[k] >= '0' && number[k] <= '9'; k++, digits++, scale--)
+				mantissa = mantissa * 10 + (number[k] - '0');
+		}
+		if (k < numberLength && (number[k] == 'e' || number[k] == 'E')) {
+			k++;
+			boolean negativeExponent = k < numberLength && number[k] == '-';
+			if (k < numberLength && (number[k] == '-' || number[k] == '+'))
+				k++;
+			simple &= k < numberLength && k + 4 >= numberLength;
+			int exponent = 0;
+			for (; k < numberLength && number[k] >= '0' && number[k] <= '9'; k++)
+				exponent = exponent * 10 + (number[k] - '0');
+			scale += negativeExponent ? -exponent : exponent;
+		}
+		if (simple && k == numberLength && digits <= 15 && Math.abs(scale) <= 22) {
+			double value = scale >= 0 ? mantissa * powers[scale] : mantissa / powers[-scale];
+			return negative ? -value : value;
+		}
+		try {
+			return Double.parseDouble(new String(number, 0, numberLength));
+		} catch (NumberFormatException e) {
+			throw error("Bad number " + new String(number, 0, numberLength));
+		}
+	}
+
+	// the next number as an int (it has to be a whole number)
+	public int nextInt() throws IOException {
+		double value = nextDouble();
+		if (value != Math.rint(value) || Math.abs(value) > Integer.MAX_VALUE)
+			throw error("Expected a whole number but was " + value);
+		return (int) value;
+	}
+
+	// skips the next value, objects and arrays included
+	public void skipValue() throws IOException {
+		int open = 0;
+		do {
+			Token token = peek();
+			if (token == Token.BEGIN_OBJECT) {
+				beginObject();
+				open++;
+			} else if (token == Token.BEGIN_ARRAY) {
+				beginArray();
+				open++;
+			} else if (token == Token.END_OBJECT) {
+				endObject();
+				open--;
+			} else if (token == Token.END_ARRAY) {
+				endArray();
+				open--;
+			} else if (token == Token.END)
+				throw error("Unexpected end of the document");
+			else
+				peeked = null;
+		} while (open > 0);
+	}
+
+	// "line L, column C" of the next character (for error messages)
+	public String location() {
+		return "line " + line + ", column " + (offset + position - lineStart + 1);
+	}
+
+	// an exception for a problem at the current location
+	public IOException error(String message) {
+		return new IOException(message + " at " + location());
+	}
+
+	private void expect(Token token) throws IOException {
+		if (peek() != token)
+			throw error("Expected " + token + " but was " + peeked);
+		peeked = null;
+	}
+
+	private void push(int context) {
+		if (depth == stack.length)
+			stack = Arrays.copyOf(stack, depth * 2);
+		stack[depth++] = context;
+	}
+
+	// reads a string after its opening quote into text
+	private void readString() throws IOException {
+		text.setLength(0);
+		while (true) {
+			// plain characters are copied a run at a time
+			int start = position;
+			while (position < limit && buffer[position] != '"' && buffer[position] != '\\' && buffer[position] != '\n')
+				position++;
+			text.append(buffer, start, position - start);
+			int c = read();
+			if (c == '"')
+				return;
+			if (c == -1)
+				throw error("Unterminated string");
+			if (c == '\n') {
+				newLine();
+				text.append('\n');
+			} else if (c == '\\') {
+				c = read();
+				if (c == 'n')
+					text.append('\n');
+				else if (c == 't')
+					text.append('\t');
+				else if (c == 'r')
+					text.append('\r');
+				else if (c == 'b')
+					text.append('\b');
+				else if (c == 'f')
+					text.append('\f');
+				else if (c == 'u') {
+					int code = 0;
+					for (int k = 0; k < 4; k++) {
+						int digit = Character.digit(read(), 16);
+						if (digit < 0)
+							throw error("Bad \\u escape");
+						code = code * 16 + digit;
+					}
+					text.append((char) code);
+				} else if (c == '"' || c == '\\' || c == '/')
+					text.append((char) c);
+				else
+					throw error("Bad escape");
+			} else
+				text.append((char) c); // first character after refilling the buffer
+		}
+	}
+
+	// next character that isn't whitespace (not consumed), or -1 at the end
+	private int skipWhitespace() throws IOException {
+		while (true) {
+			int c = peekChar();
+			if (c == ' ' || c == '\t' || c == '\r')
+				position++;
+			else if (c == '\n') {
+				position++;
+				newLine();
+			} else
+				return c;
+		}
+	}
+
+	private void newLine() {
+		line++;
+		lineStart = offset + position;
+	}
+
+	private int peekChar() throws IOException {
+		if (position == limit && !fill())
+			return -1;
+		return buffer[position];
+	}
+
+	private int read() throws IOException {
+		if (position == limit && !fill())
+			return -1;
+		return buffer[position++];
+	}
+
+	private boolean fill() throws IOException {
+		offset += limit;
+		position = 0;
+		limit = 0;
+		int count = in.read(buffer, 0, buffer.length);
+		if (count <= 0)
+			return false;
+		limit = count;
+		return true;
+	}
+
+}
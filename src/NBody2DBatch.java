@@ -0,0 +1,175 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+// runs a scenario without a display and writes snapshots and timing stats to disk
+public class NBody2DBatch {
+
+	// defaults
+	private int scenario = 2;
+	private File file = null; // scenario file instead of a numbered scenario
+	private int physicsMode = -1; // -1 = scenario's own mode
+	private long steps = 1000;
+	private double dt = 60.0; // seconds per step
+	private long every = 100; // steps between snapshots (0 = none)
+	private long checkpointEvery = 0; // steps between checkpoints (0 = none)
+	private File resume = null; // checkpoint to start from
+	private File record = null; // trajectory file
+	private int recordEvery = 1;
+	private String encoding = "delta";
+	private File out = new File("batch");
+	private double width = 1920, height = 1080; // view size the scenarios are laid out for
+
+	public static void main(String[] args) throws IOException {
+		NBody2DBatch batch = new NBody2DBatch();
+		try {
+			batch.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			usage();
+			System.exit(1);
+		}
+		batch.run();
+	}
+
+	public static void usage() {
+		System.err.println("Usage: java NBody2DBatch [options]");
+		System.err.println("  --scenario N   scenario to load (0-9, default 2)");
+		System.err.println("  --file F       scenario file to load instead");
+		System.err.println("  --mode M       physics mode (default: the scenario's)");
+		System.err.println("  --steps N      number of steps (default 1000)");
+		System.err.println("  --dt S         seconds per step (default 60)");
+		System.err.println("  --every N      steps between snapshots, 0 = none (default 100)");
+		System.err.println("  --checkpoint N steps between checkpoints to DIR/checkpoint.bin, 0 = none (default 0)");
+		System.err.println("  --resume F     start from a checkpoint instead of a scenario");
+		System.err.println("  --record F     record the trajectory to F");
+		System.err.println("  --record-every N  steps between recorded frames (default 1)");
+		System.err.println("  --encoding E   double, float, delta or float-delta (default delta)");
+		System.err.println("  --out DIR      output directory (default batch)");
+		System.err.println("  --view WxH     view size the scenario is laid out for (default 1920x1080)");
+	}
+
+	public void parse(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("--headless"))
+				continue;
+			if (i + 1 >= args.length)
+				throw new IllegalArgumentException("Missing value for " + arg);
+			String value = args[++i];
+			try {
+				if (arg.equals("--scenario"))
+					scenario = Integer.parseInt(value);
+				else if (arg.equals("--file"))
+					file = new File(value);
+				else if (arg.equals("--mode"))
+					physicsMode = Integer.parseInt(value);
+				else if (arg.equals("--steps"))
+					steps = Long.parseLong(value);
+				else if (arg.equals("--dt"))
+					dt = Double.parseDouble(value);
+				else if (arg.equals("--every"))
+					every = Long.parseLong(value);
+				else if (arg.equals("--checkpoint"))
+					checkpointEvery = Long.parseLong(value);
+				else if (arg.equals("--resume"))
+					resume = new File(value);
+				else if (arg.equals("--record"))
+					record = new File(value);
+				else if (arg.equals("--record-every"))
+					recordEvery = Integer.parseInt(value);
+				else if (arg.equals("--encoding")) {
+					if (!value.matches("double|float|delta|float-delta"))
+						throw new IllegalArgumentException("Unknown encoding " + value);
+					encoding = value;
+				} else if (arg.equals("--out"))
+					out = new File(value);
+				else if (arg.equals("--view")) {
+					String[] size = value.toLowerCase().split("x");
+					width = Double.parseDouble(size[0]);
+					height = Double.parseDouble(size[1]);
+				} else
+					throw new IllegalArgumentException("Unknown option " + arg);
+			} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+				throw new IllegalArgumentException("Bad value for " + arg + ": " + value);
+			}
+		}
+	}
+
+	public void run() throws IOException {
+		if (!out.isDirectory() && !out.mkdirs())
+			throw new IOException("Could not create " + out);
+
+		// loading the scenario (the simulation thread is never started)
+		Simulation sim = new Simulation(width, height);
+		sim.setScenario(scenario);
+		if (file != null)
+			sim.setScenarioFile(file);
+		sim.reset();
+		if (resume != null)
+			sim.restore(Checkpoint.read(resume));
+		if (physicsMode != -1)
+			sim.setPhysicsMode(physicsMode);
+		System.out.println((resume != null ? resume.toString() : file != null ? file.toString() : "Scenario " + scenario) + ", physics mode " + sim.getPhysicsMode() + ", " + sim.getBodies().size() + " bodies, " + steps + " steps of " + dt + " s");
+
+		// recording (the recorder skips all but every Nth step itself)
+		TrajectoryRecorder recorder = null;
+		if (record != null) {
+			recorder = new TrajectoryRecorder(record, recordEvery, encoding.startsWith("float"), encoding.endsWith("delta"), 8);
+			recorder.frame(sim.getBodies(), sim.getTime());
+		}
+
+		try (PrintWriter stats = new PrintWriter(new FileWriter(new File(out, "stats.csv")))) {
+			stats.println("step,time,bodies,ms_per_step,steps_per_second");
+			writeSnapshot(sim, 0);
+
+			long start = System.nanoTime();
+			long intervalStart = start;
+			long intervalSteps = 0;
+			for (long step = 1; step <= steps; step++) {
+				sim.step(dt);
+				intervalSteps++;
+				if (recorder != null)
+					recorder.frame(sim.getBodies(), sim.getTime());
+
+				// checkpoints (written in the background; skipped if the last one isn't done)
+				if (checkpointEvery > 0 && step % checkpointEvery == 0)
+					sim.saveCheckpoint(new File(out, "checkpoint.bin"), 0.0, 0.0, sim.getScreenScale());
+
+				// snapshots and stats
+				boolean last = step == steps;
+				if ((every > 0 && step % every == 0) || last) {
+					long now = System.nanoTime();
+					double ms = (now - intervalStart) / 1000000.0 / intervalSteps;
+					stats.println(step + "," + sim.getTime() + "," + sim.getBodies().size() + "," + ms + "," + (1000.0 / ms));
+					stats.flush();
+					if (every > 0)
+						writeSnapshot(sim, step);
+					intervalStart = System.nanoTime(); // not counting the snapshot
+					intervalSteps = 0;
+				}
+			}
+
+			double seconds = (System.nanoTime() - start) / 1000000000.0;
+			System.out.println("Done: " + steps + " steps in " + seconds + " s (" + (steps / seconds) + " steps/s), " + sim.getBodies().size() + " bodies left");
+		}
+		if (recorder != null) {
+			recorder.close();
+			System.out.println("Recorded " + recorder.getFrames() + " frames to " + record + " (" + recorder.getBytes() + " bytes, simulation waited " + recorder.getStalled() + " ms)");
+		}
+		sim.getCheckpoints().finish();
+		sim.getWorkers().shutdown();
+	}
+
+	// one csv file per snapshot
+	private void writeSnapshot(Simulation sim, long step) throws IOException {
+		File file = new File(out, String.format("snapshot_%08d.csv", step));
+		try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
+			writer.println("name,mass,radius,sx,sy,vx,vy");
+			for (Body2D body : sim.getBodies())
+				writer.println(body.getName().replace(',', ' ') + "," + body.getMass() + "," + body.getRadius() + "," + body.getSX() + "," + body.getSY() + "," + body.getVX() + "," + body.getVY());
+		}
+	}
+
+}
@@ -0,0 +1,312 @@
+import java.awt.Color;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Random;
+
+// micro-benchmarks for the hot paths (no dependencies, runs with plain java)
+public class NBody2DBench {
+
+	// benchmark names
+	public static final String[] ALL = { "force", "simd", "forkjoin", "simdjoin", "barneshut", "fmm", "pm", "step", "colcheck", "splitcheck", "addframe", "checkpoint" };
+
+	// settings
+	private String[] benches = ALL;
+	private int[] scenarios = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9 };
+	private int[] counts = { 10, 100, 1000, 10000, 100000 };
+	private int warmups = 2; // iterations
+	private int iterations = 5;
+	private double iterationTime = 1.0; // s
+	private double maxPairs = 2e9; // skips O(N^2) runs that would take minutes
+	private double dt = 60.0; // s
+	private String csv = null;
+
+	// allocation
+	private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	private long overhead = 0; // bytes allocated by measuring itself
+
+	public static void main(String[] args) throws IOException {
+		NBody2DBench bench = new NBody2DBench();
+		try {
+			bench.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			usage();
+			System.exit(1);
+		}
+		bench.run();
+	}
+
+	public static void usage() {
+		System.err.println("Usage: java NBody2DBench [options]");
+		System.err.println("  --bench a,b,...     any of " + String.join(",", ALL) + " (default all)");
+		System.err.println("  --scenarios 0,4-6   scenarios to load (default 0-9)");
+		System.err.println("  --bodies 10,1000    body counts; scenarios are cloned or cut to size (default 10,100,1000,10000,100000)");
+		System.err.println("  --iterations N      measured iterations (default 5)");
+		System.err.println("  --warmups N         warmup iterations (default 2)");
+		System.err.println("  --time S            seconds per iteration (default 1)");
+		System.err.println("  --max-pairs N       skip O(N^2) benchmarks above N pair evaluations per op (default 2e9)");
+		System.err.println("  --csv FILE          also write the results as csv");
+	}
+
+	public void parse(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (i + 1 >= args.length)
+				throw new IllegalArgumentException("Missing value for " + arg);
+			String value = args[++i];
+			try {
+				if (arg.equals("--bench"))
+					benches = value.split(",");
+				else if (arg.equals("--scenarios"))
+					scenarios = list(value);
+				else if (arg.equals("--bodies"))
+					counts = list(value);
+				else if (arg.equals("--iterations"))
+					iterations = Integer.parseInt(value);
+				else if (arg.equals("--warmups"))
+					warmups = Integer.parseInt(value);
+				else if (arg.equals("--time"))
+					iterationTime = Double.parseDouble(value);
+				else if (arg.equals("--max-pairs"))
+					maxPairs = Double.parseDouble(value);
+				else if (arg.equals("--csv"))
+					csv = value;
+				else
+					throw new IllegalArgumentException("Unknown option " + arg);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Bad value for " + arg + ": " + value);
+			}
+		}
+	}
+
+	// "0,2,4-6" -> {0, 2, 4, 5, 6}
+	private static int[] list(String value) {
+		ArrayList<Integer> list = new ArrayList<>();
+		for (String part : value.split(",")) {
+			String[] range = part.split("-");
+			int from = Integer.parseInt(range[0].trim());
+			int to = range.length > 1 ? Integer.parseInt(range[1].trim()) : from;
+			for (int i = from; i <= to; i++)
+				list.add(i);
+		}
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++)
+			array[i] = list.get(i);
+		return array;
+	}
+
+	public void run() throws IOException {
+		PrintWriter out = csv == null ? null : new PrintWriter(new FileWriter(csv));
+		if (out != null)
+			out.println("bench,scenario,bodies,ops_per_s,error_percent,bytes_per_op,mb_per_s");
+		// the simd benchmarks need GravityVector built (src-vector) and --add-modules jdk.incubator.vector
+		if (Gravity.isVectorAvailable())
+			System.out.println("SIMD rows: " + Gravity.getLanes() + " doubles per vector");
+		else
+			System.out.println("SIMD rows: not loaded (simd benchmarks skipped)");
+		System.out.println(String.format("%-11s %8s %8s %14s %8s %14s %10s", "Benchmark", "Scenario", "Bodies", "ops/s", "error", "bytes/op", "MB/s"));
+
+		// allocation of an empty measurement
+		for (int i = 0; i < 1000; i++) {
+			long before = allocatedBytes();
+			overhead = allocatedBytes() - before;
+		}
+
+		Simulation sim = new Simulation(1920, 1080);
+		for (int scenario : scenarios) {
+			// loading the scenario once
+			sim.setScenario(scenario);
+			sim.reset();
+			BodyStore base = sim.getBodies().copy();
+
+			for (int count : counts) {
+				BodyStore bodies = resize(base, count, new Random(scenario * 31L + count));
+				for (String bench : benches) {
+					double[] result = measure(sim, bench.trim(), bodies);
+					if (result == null)
+						continue;
+					String line = String.format("%-11s %8d %8d %14.3f %7.2f%% %14.0f %10.1f", bench, scenario, count, result[0], result[1], result[2], result[3]);
+					System.out.println(line);
+					if (out != null) {
+						out.println(bench + "," + scenario + "," + count + "," + result[0] + "," + result[1] + "," + result[2] + "," + result[3]);
+						out.flush();
+					}
+				}
+			}
+		}
+		if (out != null)
+			out.close();
+		sim.getWorkers().shutdown();
+	}
+
+	// cuts a scenario down or clones its bodies (slightly moved) up to count bodies
+	public static BodyStore resize(BodyStore base, int count, Random random) {
+		BodyStore bodies = new BodyStore(count);
+		int n = base.size();
+		if (n == 0)
+			return bodies;
+		// size of the system for the clone offsets
+		double extent = 0.0;
+		for (int i = 0; i < n; i++)
+			extent = Math.max(extent, Math.max(Math.abs(base.sx[i]), Math.abs(base.sy[i])));
+		for (int i = 0; i < count; i++) {
+			int j = i % n;
+			Body2D body = base.get(j);
+			double jitter = i < n ? 0.0 : (extent * 0.01 + base.radius[j] * 4);
+			double sx = base.sx[j] + (random.nextDouble() - 0.5) * jitter;
+			double sy = base.sy[j] + (random.nextDouble() - 0.5) * jitter;
+			bodies.add(new Body2D(body.getName(), body.getColor(), base.mass[j], base.radius[j], sx, sy, base.vx[j], base.vy[j]));
+		}
+		return bodies;
+	}
+
+	// ops/s, error (%), bytes/op, MB/s for one benchmark (null if skipped)
+	private double[] measure(Simulation sim, String bench, BodyStore bodies) {
+		int n = bodies.size();
+		boolean quadratic = !bench.equals("barneshut") && !bench.equals("fmm") && !bench.equals("pm") && !bench.equals("addframe") && !bench.equals("checkpoint");
+		if (quadratic && (double) n * n / 2 > maxPairs)
+			return null;
+		Runnable op = operation(sim, bench);
+		if (op == null)
+			throw new IllegalArgumentException("Unknown benchmark " + bench);
+		if (bench.startsWith("simd") && !Gravity.isVectorAvailable())
+			return null;
+		Gravity.setVectorized(true); // the default for everything else (scalar if not loaded)
+
+		// warming up
+		for (int i = 0; i < warmups; i++)
+			iteration(sim, op, bodies);
+
+		// measuring
+		double[] rates = new double[iterations];
+		double bytes = 0.0, ops = 0.0, seconds = 0.0;
+		for (int i = 0; i < iterations; i++) {
+			double[] r = iteration(sim, op, bodies);
+			rates[i] = r[0] / r[1];
+			ops += r[0];
+			seconds += r[1];
+			bytes += r[2];
+		}
+
+		// mean and 99.9% confidence half width (like JMH's error column)
+		double mean = ops / seconds;
+		double variance = 0.0;
+		for (double rate : rates)
+			variance += (rate - mean) * (rate - mean);
+		double error = 0.0;
+		if (iterations > 1)
+			error = 3.29 * Math.sqrt(variance / (iterations - 1)) / Math.sqrt(iterations) / mean * 100;
+		return new double[] { mean, error, bytes / ops, bytes / seconds / 1000000.0 };
+	}
+
+	// runs op until the iteration time is used up; returns ops, measured seconds, bytes allocated
+	private double[] iteration(Simulation sim, Runnable op, BodyStore bodies) {
+		long ops = 0;
+		long measured = 0;
+		long allocated = 0;
+		long end = System.nanoTime() + (long) (iterationTime * 1000000000L);
+		do {
+			sim.setBodies(bodies.copy()); // fresh state, not measured
+			long before = allocatedBytes();
+			long start = System.nanoTime();
+			op.run();
+			measured += System.nanoTime() - start;
+			allocated += Math.max(0, allocatedBytes() - before - overhead);
+			ops++;
+		} while (System.nanoTime() < end);
+		return new double[] { ops, measured / 1000000000.0, allocated };
+	}
+
+	private Runnable operation(Simulation sim, String bench) {
+		Gravity gravity = new Gravity();
+		BarnesHut barnesHut = new BarnesHut(0.5);
+		FastMultipole fastMultipole = new FastMultipole(8);
+		ParticleMesh particleMesh = new ParticleMesh(256);
+		// force and forkjoin are the scalar rows, simd and simdjoin the same sums on the Vector API
+		if (bench.equals("force"))
+			return () -> {
+				Gravity.setVectorized(false);
+				Gravity.accelerate(sim.getBodies());
+			};
+		if (bench.equals("simd"))
+			return () -> {
+				Gravity.setVectorized(true);
+				Gravity.accelerate(sim.getBodies());
+			};
+		if (bench.equals("forkjoin"))
+			return () -> {
+				Gravity.setVectorized(false);
+				gravity.accelerate(sim.getBodies(), sim.getWorkers());
+			};
+		if (bench.equals("simdjoin"))
+			return () -> {
+				Gravity.setVectorized(true);
+				gravity.accelerate(sim.getBodies(), sim.getWorkers());
+			};
+		if (bench.equals("barneshut"))
+			return () -> barnesHut.accelerate(sim.getBodies());
+		if (bench.equals("fmm"))
+			return () -> fastMultipole.accelerate(sim.getBodies(), sim.getWorkers());
+		if (bench.equals("pm"))
+			return () -> particleMesh.accelerate(sim.getBodies(), sim.getWorkers());
+		if (bench.equals("step"))
+			return () -> sim.step(dt);
+		if (bench.equals("colcheck"))
+			return () -> sim.colCheck();
+		if (bench.equals("splitcheck"))
+			return () -> sim.splitCheck();
+		if (bench.equals("addframe"))
+			return () -> sim.addFrame();
+		if (bench.equals("checkpoint"))
+			return () -> roundTrip(sim.getBodies());
+		return null;
+	}
+
+	// capture, write, read and restore, and checks that the bodies came back the same (black
+	// holes included, they're Color.BLACK itself)
+	private void roundTrip(BodyStore bodies) {
+		Checkpoint checkpoint = new Checkpoint();
+		checkpoint.capture(bodies, null);
+		BodyStore restored = new BodyStore(bodies.size());
+		try {
+			File file = File.createTempFile("bench", ".checkpoint");
+			try {
+				checkpoint.write(file);
+				Checkpoint.read(file).restore(restored);
+			} finally {
+				file.delete();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if (restored.size() != bodies.size())
+			throw new IllegalStateException("checkpoint restored " + restored.size() + " of " + bodies.size() + " bodies");
+		for (int i = 0; i < bodies.size(); i++) {
+			Body2D a = bodies.get(i), b = restored.get(i);
+			boolean same = bodies.sx[i] == restored.sx[i] && bodies.sy[i] == restored.sy[i] && bodies.vx[i] == restored.vx[i] && bodies.vy[i] == restored.vy[i]
+					&& bodies.mass[i] == restored.mass[i] && bodies.radius[i] == restored.radius[i] && a.getStoredName().equals(b.getStoredName())
+					&& a.isTestParticle() == b.isTestParticle() && a.getColor().getRGB() == b.getColor().getRGB() && (a.getColor() == Color.BLACK) == (b.getColor() == Color.BLACK);
+			if (!same)
+				throw new IllegalStateException("checkpoint changed body " + i + " (" + a.getName() + ")");
+		}
+	}
+
+	// bytes allocated by every live thread so far (includes the workers)
+	private long allocatedBytes() {
+		if (!(threads instanceof com.sun.management.ThreadMXBean))
+			return 0;
+		com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) threads;
+		long total = 0;
+		for (long bytes : mx.getThreadAllocatedBytes(threads.getAllThreadIds()))
+			if (bytes > 0)
+				total += bytes;
+		return total;
+	}
+
+}
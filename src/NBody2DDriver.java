@@ -8,6 +8,22 @@ import javax.swing.JFrame;
 
 public class NBody2DDriver {
 	public static void main(String[] args) throws IOException {
+		// no display (see NBody2DBatch for the options)
+		if (args.length > 0 && args[0].equals("--headless")) {
+			NBody2DBatch.main(args);
+			return;
+		}
+
+		// options
+		int historyMB = -1;
+		try {
+			historyMB = parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			usage();
+			System.exit(1);
+		}
+
 		// simulation 1
 		JFrame frame1 = new JFrame("2D N-Body Simulation"); // frame and title
 
@@ -15,6 +31,12 @@ public class NBody2DDriver {
 		Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize();
 		NBody2DPanel panel1 = new NBody2DPanel(screenSize.getWidth(), screenSize.getHeight());
 		frame1.add(panel1);
+		// memory for rewinding
+		if (historyMB > 0) {
+			int megabytes = historyMB;
+			Simulation sim = panel1.getSimulation();
+			sim.post(() -> sim.setHistoryMB(megabytes));
+		}
 
 		// when the simulation is alt+tabbed out of (https://gamedev.stackexchange.com/questions/59229/how-to-detect-whether-my-java-application-is-active)
 		frame1.addWindowFocusListener(new WindowAdapter() {
@@ -50,4 +72,32 @@ public class NBody2DDriver {
 		frame2.setVisible(true);
 		*/
 	}
+
+	public static void usage() {
+		System.err.println("Usage: java NBody2DDriver [options]");
+		System.err.println("  --history MB   memory kept for rewinding (default 64)");
+		System.err.println("  --headless     run NBody2DBatch instead (its options follow)");
+	}
+
+	// returns the rewind memory in MB (-1 = default)
+	private static int parse(String[] args) {
+		int historyMB = -1;
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (i + 1 >= args.length)
+				throw new IllegalArgumentException("Missing value for " + arg);
+			String value = args[++i];
+			try {
+				if (arg.equals("--history")) {
+					historyMB = Integer.parseInt(value);
+					if (historyMB <= 0)
+						throw new NumberFormatException();
+				} else
+					throw new IllegalArgumentException("Unknown option " + arg);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Bad value for " + arg + ": " + value);
+			}
+		}
+		return historyMB;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,477 @@
+import java.util.Arrays;
+
+// particle-particle particle-mesh (P3M): the potential is split into a smooth long-range part,
+// -G m erf(r / rs) / r, solved on a grid (cloud-in-cell masses, FFT convolution, interpolated
+// forces), and a short-range rest, -G m erfc(r / rs) / r, summed directly over pairs closer than
+// a few rs (found through buckets of mesh cells). the grid is zero-padded to twice its size so the
+// convolution doesn't wrap around (Hockney's method for isolated systems); it's the 3D 1/r
+// kernel on a 2D grid, since the simulation's gravity is 3D gravity in a plane
+public class ParticleMesh {
+
+	private final double G = Gravity.G; // m^3 kg^-1 s^-2
+	private final double split = 2.0; // rs in grid cells
+	private final double cutoff = 3.5; // short-range pairs are summed out to this many rs (erfc(3.5) < 1e-6)
+	private final int table_size = 4096; // short-range force factor entries (over r^2)
+	private final int margin = 2; // empty cells around the bodies (the force stencil reaches 2 cells)
+	private final int min_grid = 32, max_grid = 1024;
+	private final int column_block = 8; // columns transformed together
+
+	// grid (N x N cells of the bodies, padded to P = 2N for the FFT)
+	private int size = 0, padded = 0;
+	private double minX, minY, cellSize; // corner of cell (0, 0) and cell width (m)
+	private double[] re = new double[0], im = new double[0]; // padded grid, row by row
+	private double[] kernel = new double[0]; // transform of the long-range kernel, column by column (it's real)
+	private double[] forceX = new double[0], forceY = new double[0]; // N x N
+	private int[] reverse = new int[0]; // bit reversal of P
+	private double[] cos = new double[0], sin = new double[0]; // twiddle factors of P
+
+	// bodies (cell and offset inside it, and sources sorted by row for the deposit)
+	private BodyStore bodies = null; // of the last call (for the error check)
+	private int[] cellX = new int[0], cellY = new int[0];
+	private double[] offsetX = new double[0], offsetY = new double[0];
+	private int[] byRow = new int[0], rowStart = new int[0];
+
+	// short range
+	private final double[] factor = new double[table_size + 2]; // force factor over (r / cutoff)^2
+	private int[] bucketStart = new int[0]; // sources of bucket b are near*[bucketStart[b]] to near*[bucketStart[b + 1] - 1]
+	private double[] nearX = new double[0], nearY = new double[0], nearMass = new double[0];
+	private long[] pairCounts = new long[0]; // per worker
+
+	// stats
+	private long pairs = 0; // pairs summed directly in the last call
+	private double errorRMS = 0.0;
+	private double errorMax = 0.0;
+	private int errorSamples = 0;
+
+	public ParticleMesh(int gridSize) {
+		setGridSize(gridSize);
+		// erfc(u) + 2u / sqrt(pi) e^(-u^2) is what's left of the Newtonian force at u = r / rs
+		for (int k = 0; k < factor.length; k++) {
+			double u = Math.sqrt(Math.min(1.0, (double) k / table_size)) * cutoff;
+			factor[k] = erfc(u) + 2 * u / Math.sqrt(Math.PI) * Math.exp(-u * u);
+		}
+	}
+
+	// calculates every body's acceleration
+	public void accelerate(BodyStore bodies, WorkerPool workers) {
+		this.bodies = bodies;
+		int n = bodies.size();
+		bodies.sources();
+		pairs = 0;
+		if (!place(bodies)) { // no extent to grid (or bodies at infinity)
+			Gravity.accelerate(bodies);
+			return;
+		}
+		if (kernel.length != padded * padded)
+			transformKernel(workers);
+		final int N = size, P = padded;
+
+		// cloud-in-cell deposit: a body spreads its mass over 4 cells in 2 rows, so even rows
+		// and then odd rows can be filled in parallel without two workers sharing a cell (rows
+		// past N are never read, so they stay as they are)
+		workers.run(N, (start, end) -> {
+			Arrays.fill(re, start * P, end * P, 0.0);
+			Arrays.fill(im, start * P, end * P, 0.0);
+		});
+		double[] mass = bodies.mass;
+		for (int phase = 0; phase < 2; phase++) {
+			final int p = phase;
+			workers.run((N - 1 - p) / 2 + 1, (start, end) -> {
+				for (int k = start; k < end; k++) {
+					int row = 2 * k + p;
+					for (int b = rowStart[row]; b < rowStart[row + 1]; b++) {
+						int i = byRow[b];
+						int c = cellY[i] * P + cellX[i];
+						double fx = offsetX[i], fy = offsetY[i];
+						re[c] += mass[i] * (1 - fx) * (1 - fy);
+						re[c + 1] += mass[i] * fx * (1 - fy);
+						re[c + P] += mass[i] * (1 - fx) * fy;
+						re[c + P + 1] += mass[i] * fx * fy;
+					}
+				}
+			});
+		}
+
+		// convolution: rows (only the first N have mass), then each column forward, times the
+		// kernel and back, then the rows back (only the first N are needed). columns are copied
+		// out a few at a time so each row's cache line is read once
+		workers.run(N, (start, end) -> {
+			for (int row = start; row < end; row++)
+				fft(re, im, row * P, false);
+		});
+		workers.run(P / column_block, (start, end) -> {
+			double[][] columnRe = new double[column_block][P], columnIm = new double[column_block][P];
+			for (int block = start; block < end; block++) {
+				int first = block * column_block;
+				for (int row = 0; row < N; row++) {
+					for (int j = 0; j < column_block; j++) {
+						columnRe[j][row] = re[row * P + first + j];
+						columnIm[j][row] = im[row * P + first + j];
+					}
+				}
+				for (int j = 0; j < column_block; j++) {
+					double[] cr = columnRe[j], ci = columnIm[j];
+					Arrays.fill(cr, N, P, 0.0);
+					Arrays.fill(ci, N, P, 0.0);
+					fft(cr, ci, 0, false);
+					int offset = (first + j) * P;
+					for (int row = 0; row < P; row++) {
+						double k = kernel[offset + row];
+						cr[row] *= k;
+						ci[row] *= k;
+					}
+					fft(cr, ci, 0, true);
+				}
+				for (int row = 0; row < N; row++) {
+					for (int j = 0; j < column_block; j++) {
+						re[row * P + first + j] = columnRe[j][row];
+						im[row * P + first + j] = columnIm[j][row];
+					}
+				}
+			}
+		});
+		workers.run(N, (start, end) -> {
+			for (int row = start; row < end; row++)
+				fft(re, im, row * P, true);
+		});
+
+		// forces on the grid (-gradient, 4-point differences) in m/s^2
+		double scale = G / (cellSize * cellSize);
+		workers.run(N, (start, end) -> {
+			for (int row = start; row < end; row++) {
+				for (int column = 0; column < N; column++) {
+					int c = row * N + column;
+					if (row < margin || row >= N - margin || column < margin || column >= N - margin) {
+						forceX[c] = 0.0;
+						forceY[c] = 0.0;
+						continue;
+					}
+					int q = row * P + column;
+					forceX[c] = -scale * (8 * (re[q + 1] - re[q - 1]) - (re[q + 2] - re[q - 2])) / 12;
+					forceY[c] = -scale * (8 * (re[q + P] - re[q - P]) - (re[q + 2 * P] - re[q - 2 * P])) / 12;
+				}
+			}
+		});
+
+		// interpolated back (the same weights as the deposit, so bodies don't push themselves)
+		double[] ax = bodies.ax, ay = bodies.ay;
+		workers.run(n, (start, end) -> {
+			for (int i = start; i < end; i++) {
+				int c = cellY[i] * N + cellX[i];
+				double fx = offsetX[i], fy = offsetY[i];
+				double w00 = (1 - fx) * (1 - fy), w10 = fx * (1 - fy), w01 = (1 - fx) * fy, w11 = fx * fy;
+				ax[i] = w00 * forceX[c] + w10 * forceX[c + 1] + w01 * forceX[c + N] + w11 * forceX[c + N + 1];
+				ay[i] = w00 * forceY[c] + w10 * forceY[c + 1] + w01 * forceY[c + N] + w11 * forceY[c + N + 1];
+			}
+		});
+
+		shortRange(bodies, workers);
+	}
+
+	// sets the grid over the bodies and finds each body's cell; false if they have no extent
+	private boolean place(BodyStore bodies) {
+		int n = bodies.size();
+		if (n < 2)
+			return false;
+		double[] sx = bodies.sx, sy = bodies.sy;
+		double maxX = sx[0], maxY = sy[0];
+		minX = sx[0];
+		minY = sy[0];
+		for (int i = 1; i < n; i++) {
+			minX = Math.min(minX, sx[i]);
+			maxX = Math.max(maxX, sx[i]);
+			minY = Math.min(minY, sy[i]);
+			maxY = Math.max(maxY, sy[i]);
+		}
+		double extent = Math.max(maxX - minX, maxY - minY);
+		if (!(extent > 0) || Double.isInfinite(extent))
+			return false;
+
+		// bodies from cell margin to N - margin - 2, so their 4 cells and the stencil stay inside
+		cellSize = extent / (size - 2 * margin - 2);
+		minX -= margin * cellSize;
+		minY -= margin * cellSize;
+		if (cellX.length < n) {
+			int length = Math.max(n, cellX.length * 2);
+			cellX = new int[length];
+			cellY = new int[length];
+			offsetX = new double[length];
+			offsetY = new double[length];
+			byRow = new int[length];
+		}
+		int limit = size - margin - 2;
+		Arrays.fill(rowStart, 0);
+		for (int i = 0; i < n; i++) {
+			double x = (sx[i] - minX) / cellSize, y = (sy[i] - minY) / cellSize;
+			cellX[i] = Math.min(limit, (int) x);
+			cellY[i] = Math.min(limit, (int) y);
+			offsetX[i] = Math.min(1.0, x - cellX[i]);
+			offsetY[i] = Math.min(1.0, y - cellY[i]);
+			if (!bodies.test[i])
+				rowStart[cellY[i] + 1]++;
+		}
+
+		// counting sort of the sources by row
+		for (int row = 0; row < size; row++)
+			rowStart[row + 1] += rowStart[row];
+		int[] fill = Arrays.copyOf(rowStart, size);
+		int sources = bodies.sources();
+		int[] source = bodies.source;
+		for (int k = 0; k < sources; k++) {
+			int i = source[k];
+			byRow[fill[cellY[i]]++] = i;
+		}
+		return true;
+	}
+
+	// adds the short-range rest of the force from every source closer than the cutoff. sources
+	// are sorted into buckets of whole mesh cells at least the cutoff wide, so a body's candidates
+	// are 3 runs of 3 buckets, each next to each other in the sorted copies
+	private void shortRange(BodyStore bodies, WorkerPool workers) {
+		int n = bodies.size();
+		int sources = bodies.sources();
+		int[] source = bodies.source;
+		double[] sx = bodies.sx, sy = bodies.sy, mass = bodies.mass, ax = bodies.ax, ay = bodies.ay;
+		double reach = cutoff * split * cellSize;
+		double reach2 = reach * reach;
+		int width = (int) Math.ceil(cutoff * split); // mesh cells per bucket
+		int B = (size + width - 1) / width; // buckets per side
+
+		// counting sort of the sources by bucket
+		if (bucketStart.length < B * B + 1)
+			bucketStart = new int[B * B + 1];
+		Arrays.fill(bucketStart, 0, B * B + 1, 0);
+		for (int k = 0; k < sources; k++) {
+			int i = source[k];
+			bucketStart[cellY[i] / width * B + cellX[i] / width + 1]++;
+		}
+		for (int b = 0; b < B * B; b++)
+			bucketStart[b + 1] += bucketStart[b];
+		if (nearX.length < sources) {
+			int length = Math.max(sources, nearX.length * 2);
+			nearX = new double[length];
+			nearY = new double[length];
+			nearMass = new double[length];
+		}
+		int[] fill = Arrays.copyOf(bucketStart, B * B);
+		for (int k = 0; k < sources; k++) {
+			int i = source[k];
+			int b = fill[cellY[i] / width * B + cellX[i] / width]++;
+			nearX[b] = sx[i];
+			nearY[b] = sy[i];
+			nearMass[b] = mass[i];
+		}
+
+		if (pairCounts.length != workers.getWorkers())
+			pairCounts = new long[workers.getWorkers()];
+		Arrays.fill(pairCounts, 0);
+		workers.run(n, (start, end) -> {
+			long count = 0;
+			for (int i = start; i < end; i++) {
+				double px = sx[i], py = sy[i];
+				int bx = cellX[i] / width, by = cellY[i] / width;
+				int from = Math.max(0, bx - 1), to = Math.min(B - 1, bx + 1);
+				double sumX = 0.0, sumY = 0.0;
+				for (int row = Math.max(0, by - 1); row <= Math.min(B - 1, by + 1); row++) {
+					for (int j = bucketStart[row * B + from]; j < bucketStart[row * B + to + 1]; j++) {
+						double x = nearX[j] - px;
+						double y = nearY[j] - py;
+						double z2 = x * x + y * y;
+						if (z2 == 0 || z2 >= reach2)
+							continue;
+						double q = z2 / reach2 * table_size;
+						int k = (int) q;
+						double f = factor[k] + (q - k) * (factor[k + 1] - factor[k]);
+						f *= G * nearMass[j] / (z2 * Math.sqrt(z2)); // G m / z^3
+						sumX += f * x;
+						sumY += f * y;
+						count++;
+					}
+				}
+				ax[i] += sumX;
+				ay[i] += sumY;
+			}
+			pairCounts[workers.slot()] += count;
+		});
+		for (long count : pairCounts)
+			pairs += count;
+	}
+
+	// transform of the long-range kernel -erf(r / rs) / r over the padded grid (in cells, for a
+	// mass of 1), with the inverse transform's 1 / P^2 folded in
+	private void transformKernel(WorkerPool workers) {
+		final int N = size, P = padded;
+		workers.run(P, (start, end) -> {
+			for (int row = start; row < end; row++) {
+				int y = row <= N ? row : row - P;
+				for (int column = 0; column < P; column++) {
+					int x = column <= N ? column : column - P;
+					double r = Math.sqrt(x * x + y * y);
+					re[row * P + column] = r == 0 ? -2 / (Math.sqrt(Math.PI) * split) : -(1 - erfc(r / split)) / r;
+					im[row * P + column] = 0.0;
+				}
+				fft(re, im, row * P, false);
+			}
+		});
+		double[] transformed = new double[P * P];
+		workers.run(P, (start, end) -> {
+			double[] columnRe = new double[P], columnIm = new double[P];
+			for (int column = start; column < end; column++) {
+				for (int row = 0; row < P; row++) {
+					columnRe[row] = re[row * P + column];
+					columnIm[row] = im[row * P + column];
+				}
+				fft(columnRe, columnIm, 0, false);
+				double wx = window(column);
+				for (int row = 0; row < P; row++)
+					transformed[column * P + row] = columnRe[row] / ((double) P * P) / (wx * window(row));
+			}
+		});
+		kernel = transformed;
+	}
+
+	// cloud-in-cell smoothing at frequency index k, squared (once for the deposit, once for the
+	// interpolation), which the kernel divides out
+	private double window(int k) {
+		int m = k < padded / 2 ? k : k - padded;
+		if (m == 0)
+			return 1.0;
+		double t = Math.PI * m / padded;
+		double sinc = Math.sin(t) / t;
+		return sinc * sinc * sinc * sinc;
+	}
+
+	// in-place radix-2 FFT of P values starting at offset (unnormalized both ways)
+	private void fft(double[] re, double[] im, int offset, boolean inverse) {
+		int P = padded;
+		for (int i = 0; i < P; i++) {
+			int j = reverse[i];
+			if (j > i) {
+				double t = re[offset + i];
+				re[offset + i] = re[offset + j];
+				re[offset + j] = t;
+				t = im[offset + i];
+				im[offset + i] = im[offset + j];
+				im[offset + j] = t;
+			}
+		}
+		for (int length = 2; length <= P; length <<= 1) {
+			int half = length >> 1, stride = P / length;
+			for (int k = 0; k < half; k++) {
+				double wr = cos[k * stride], wi = inverse ? sin[k * stride] : -sin[k * stride];
+				for (int a = offset + k; a < offset + P; a += length) {
+					int b = a + half;
+					double tr = re[b] * wr - im[b] * wi;
+					double ti = re[b] * wi + im[b] * wr;
+					re[b] = re[a] - tr;
+					im[b] = im[a] - ti;
+					re[a] += tr;
+					im[a] += ti;
+				}
+			}
+		}
+	}
+
+	// complementary error function (fractional error under 1.2e-7, Numerical Recipes' erfcc)
+	private static double erfc(double x) {
+		double z = Math.abs(x);
+		double t = 1 / (1 + 0.5 * z);
+		double r = t * Math.exp(-z * z - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t * (0.09678418 + t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587 + t * (-0.82215223 + t * 0.17087277)))))))));
+		return x >= 0 ? r : 2 - r;
+	}
+
+	// compares some bodies' accelerations (from the last call) with the direct sum
+	public void measureError(int samples) {
+		errorRMS = 0.0;
+		errorMax = 0.0;
+		int n = bodies == null ? 0 : bodies.size();
+		errorSamples = Math.min(samples, n);
+		if (errorSamples == 0)
+			return;
+		int sources = bodies.sources();
+		int[] source = bodies.source;
+		double[] x = bodies.sx, y = bodies.sy, m = bodies.mass;
+		double diff2 = 0.0, total2 = 0.0;
+		for (int s = 0; s < errorSamples; s++) {
+			int i = (int) ((long) s * n / errorSamples);
+			// direct sum
+			double dax = 0.0, day = 0.0;
+			for (int k = 0; k < sources; k++) {
+				int j = source[k];
+				if (j == i)
+					continue;
+				double dx = x[j] - x[i];
+				double dy = y[j] - y[i];
+				double d2 = dx * dx + dy * dy;
+				if (d2 == 0)
+					continue;
+				double d = Math.sqrt(d2);
+				double a = G * m[j] / (d2 * d);
+				dax += a * dx;
+				day += a * dy;
+			}
+			double ex = bodies.ax[i] - dax;
+			double ey = bodies.ay[i] - day;
+			double e2 = ex * ex + ey * ey;
+			double a2 = dax * dax + day * day;
+			diff2 += e2;
+			total2 += a2;
+			if (a2 > 0)
+				errorMax = Math.max(errorMax, Math.sqrt(e2 / a2));
+		}
+		if (total2 > 0)
+			errorRMS = Math.sqrt(diff2 / total2);
+	}
+
+	// grid cells per side (a power of two; finer = more accurate and slower)
+	public void setGridSize(int gridSize) {
+		int n = Integer.highestOneBit(Math.max(min_grid, Math.min(max_grid, gridSize)));
+		if (n == size)
+			return;
+		size = n;
+		padded = 2 * n;
+		int P = padded;
+		re = new double[P * P];
+		im = new double[P * P];
+		kernel = new double[0]; // transformed on the next call
+		forceX = new double[n * n];
+		forceY = new double[n * n];
+		rowStart = new int[n + 1];
+		reverse = new int[P];
+		int bits = Integer.numberOfTrailingZeros(P);
+		for (int i = 0; i < P; i++)
+			reverse[i] = Integer.reverse(i) >>> (32 - bits);
+		cos = new double[P / 2];
+		sin = new double[P / 2];
+		for (int k = 0; k < P / 2; k++) {
+			cos[k] = Math.cos(2 * Math.PI * k / P);
+			sin[k] = Math.sin(2 * Math.PI * k / P);
+		}
+	}
+
+	public int getGridSize() {
+		return size;
+	}
+
+	// width of a grid cell in the last call (m)
+	public double getCellSize() {
+		return cellSize;
+	}
+
+	public long getPairs() {
+		return pairs;
+	}
+
+	public double getErrorRMS() {
+		return errorRMS;
+	}
+
+	public double getErrorMax() {
+		return errorMax;
+	}
+
+	public int getErrorSamples() {
+		return errorSamples;
+	}
+
+}
@@ -0,0 +1,349 @@
+import java.awt.Color;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+// scenario files (scenarios/N.json): settings, then "bodies", where each entry is a body or a
+// generator ("generate": "ring", "disk" or "cloud") that makes "count" bodies from a seed.
+// the file is read as a stream and every body goes straight into the store, so files with
+// millions of bodies need no memory besides the bodies themselves.
+//
+// lengths are meters, or strings in pixels at the scenario's scale ("500px") or percent of the
+// view ("50vh", "100vw"), so settings have to come before the bodies that use them. a body
+// can orbit an earlier body by name ("orbit": {"around": "Sol", "distance": 1.496e11}) instead
+// of giving its position and velocity; angles are degrees, and random when left out
+public class Scenario {
+
+	// settings (start as the simulation's and are replaced by whatever the file sets)
+	public String name = "";
+	public double screenScale; // m/pixel
+	public int physicsMode;
+	public double minMass; // kg
+	public boolean collisions, tidalForces;
+	public double testRatio;
+
+	private final BodyStore bodies;
+	private final double viewWidth, viewHeight; // pixels
+	private Random random = new Random(); // unseeded unless the file has a seed
+	private final HashMap<String, Integer> named = new HashMap<>(); // listed bodies (not generated ones) by name
+	private final HashMap<String, Color> colors = new HashMap<>();
+
+	// the entry being read (one object reused for every entry)
+	private final Entry entry = new Entry();
+
+	public Scenario(BodyStore bodies, double viewWidth, double viewHeight) {
+		this.bodies = bodies;
+		this.viewWidth = viewWidth;
+		this.viewHeight = viewHeight;
+	}
+
+	// reads a scenario, adding its bodies to the store
+	public void read(Reader reader) throws IOException {
+		JsonReader json = new JsonReader(reader);
+		json.beginObject();
+		while (json.hasNext()) {
+			String key = json.nextName();
+			if (key.equals("name"))
+				name = json.nextString();
+			else if (key.equals("seed"))
+				random = new Random((long) json.nextDouble());
+			else if (key.equals("screenScale"))
+				screenScale = json.nextDouble();
+			else if (key.equals("physicsMode"))
+				physicsMode = json.nextInt();
+			else if (key.equals("minMass"))
+				minMass = json.nextDouble();
+			else if (key.equals("collisions"))
+				collisions = json.nextBoolean();
+			else if (key.equals("tidalForces"))
+				tidalForces = json.nextBoolean();
+			else if (key.equals("testRatio"))
+				testRatio = json.nextDouble();
+			else if (key.equals("bodies")) {
+				json.beginArray();
+				while (json.hasNext())
+					entry(json);
+				json.endArray();
+			} else if (key.equals("comment"))
+				json.skipValue();
+			else
+				throw json.error("Unknown setting \"" + key + "\"");
+		}
+		json.endObject();
+		json.peek(); // nothing after the scenario
+	}
+
+	// one body or generator
+	private void entry(JsonReader json) throws IOException {
+		Entry e = entry;
+		e.clear();
+		json.beginObject();
+		while (json.hasNext()) {
+			String key = json.nextName();
+			if (key.equals("generate"))
+				e.generate = json.nextString();
+			else if (key.equals("name"))
+				e.name = json.nextString();
+			else if (key.equals("color"))
+				e.color = color(json);
+			else if (key.equals("mass"))
+				e.mass = json.nextDouble();
+			else if (key.equals("radius"))
+				e.radius = length(json);
+			else if (key.equals("x"))
+				e.x = length(json);
+			else if (key.equals("y"))
+				e.y = length(json);
+			else if (key.equals("vx"))
+				e.vx = json.nextDouble();
+			else if (key.equals("vy"))
+				e.vy = json.nextDouble();
+			else if (key.equals("test"))
+				e.test = json.nextBoolean();
+			else if (key.equals("orbit")) {
+				json.beginObject();
+				while (json.hasNext()) {
+					String field = json.nextName();
+					if (!orbitField(json, field, e))
+						throw json.error("Unknown orbit field \"" + field + "\"");
+				}
+				json.endObject();
+				e.orbit = true;
+			} else if (key.equals("count"))
+				e.count = json.nextInt();
+			else if (key.equals("seed")) {
+				e.seeded = true;
+				e.seed = (long) json.nextDouble();
+			} else if (key.equals("inner"))
+				e.inner = length(json);
+			else if (key.equals("outer"))
+				e.outer = length(json);
+			else if (key.equals("width"))
+				e.width = length(json);
+			else if (key.equals("height"))
+				e.height = length(json);
+			else if (key.equals("speed"))
+				e.speed = json.nextDouble();
+			else if (key.equals("kinds")) {
+				// {"mass", "radius"} choices picked evenly
+				json.beginArray();
+				while (json.hasNext()) {
+					double mass = Double.NaN, radius = Double.NaN;
+					json.beginObject();
+					while (json.hasNext()) {
+						String field = json.nextName();
+						if (field.equals("mass"))
+							mass = json.nextDouble();
+						else if (field.equals("radius"))
+							radius = length(json);
+						else
+							throw json.error("Unknown kind field \"" + field + "\"");
+					}
+					json.endObject();
+					e.kinds.add(new double[] { require(json, mass, "mass"), require(json, radius, "radius") });
+				}
+				json.endArray();
+			} else if (orbitField(json, key, e)) // generators take "around", "distance" and "retrograde" directly
+				continue;
+			else if (key.equals("comment"))
+				json.skipValue();
+			else
+				throw json.error("Unknown body field \"" + key + "\"");
+		}
+		json.endObject();
+
+		if (e.generate == null)
+			body(json, e);
+		else
+			generate(json, e);
+	}
+
+	// fields of an orbit; false if key isn't one
+	private boolean orbitField(JsonReader json, String key, Entry e) throws IOException {
+		if (key.equals("around")) {
+			String around = json.nextString();
+			Integer index = named.get(around);
+			if (index == null)
+				throw json.error("No body named \"" + around + "\" before this one");
+			e.around = index;
+		} else if (key.equals("distance"))
+			e.distance = length(json);
+		else if (key.equals("angle"))
+			e.angle = Math.toRadians(json.nextDouble());
+		else if (key.equals("retrograde"))
+			e.retrograde = json.nextBoolean();
+		else
+			return false;
+		return true;
+	}
+
+	private void body(JsonReader json, Entry e) throws IOException {
+		double mass = require(json, e.mass, "mass"), radius = require(json, e.radius, "radius");
+		double x = e.x, y = e.y, vx = e.vx, vy = e.vy;
+		if (e.orbit) {
+			if (e.around < 0)
+				throw json.error("An orbit needs \"around\"");
+			double t = Double.isNaN(e.angle) ? random.nextDouble() * 2 * Math.PI : e.angle;
+			double r = require(json, e.distance, "distance");
+			double[] state = new double[4];
+			orbit(e.around, r, t, e.retrograde, state);
+			x = state[0];
+			y = state[1];
+			vx = state[2];
+			vy = state[3];
+		}
+		Body2D body = bodies.add(e.name, e.color, mass, radius, x, y, vx, vy);
+		if (e.test)
+			body.setTestParticle(true);
+		if (!e.name.isEmpty())
+			named.put(e.name, body.getIndex());
+	}
+
+	// ring: radii evenly between inner and outer (or distance +- width / 2), disk: evenly spread
+	// over the area between inner and outer, both on circular orbits around "around" (if any);
+	// cloud: a width x height box around (x, y) or "around", with velocities up to speed / 2
+	// either way on each axis
+	private void generate(JsonReader json, Entry e) throws IOException {
+		boolean ring = e.generate.equals("ring"), disk = e.generate.equals("disk"), cloud = e.generate.equals("cloud");
+		if (!ring && !disk && !cloud)
+			throw json.error("Unknown generator \"" + e.generate + "\"");
+		if (e.count < 0)
+			throw json.error("A generator needs \"count\"");
+		if (e.kinds.isEmpty())
+			e.kinds.add(new double[] { require(json, e.mass, "mass"), require(json, e.radius, "radius") });
+		double inner = e.inner, outer = e.outer;
+		if (!cloud) {
+			if (ring && Double.isNaN(inner) && !Double.isNaN(e.distance)) {
+				double width = Double.isNaN(e.width) ? 0.0 : e.width;
+				inner = e.distance - width / 2;
+				outer = e.distance + width / 2;
+			}
+			inner = Double.isNaN(inner) ? 0.0 : inner;
+			outer = require(json, outer, ring ? "outer\" or \"distance" : "outer");
+		}
+		double width = cloud ? require(json, e.width, "width") : 0.0;
+		double height = Double.isNaN(e.height) ? width : e.height;
+		Random random = e.seeded ? new Random(e.seed) : this.random;
+		double[] state = new double[4];
+		for (int k = 0; k < e.count; k++) {
+			double[] kind = e.kinds.get(e.kinds.size() == 1 ? 0 : random.nextInt(e.kinds.size()));
+			if (cloud) {
+				double x = (random.nextDouble() - 0.5) * width, y = (random.nextDouble() - 0.5) * height;
+				double vx = (random.nextDouble() - 0.5) * e.speed, vy = (random.nextDouble() - 0.5) * e.speed;
+				if (e.around >= 0) {
+					x += bodies.sx[e.around];
+					y += bodies.sy[e.around];
+					vx += bodies.vx[e.around];
+					vy += bodies.vy[e.around];
+				}
+				state[0] = e.x + x;
+				state[1] = e.y + y;
+				state[2] = e.vx + vx;
+				state[3] = e.vy + vy;
+			} else {
+				double t = random.nextDouble() * 2 * Math.PI;
+				double u = random.nextDouble();
+				double r = ring ? inner + u * (outer - inner) : Math.sqrt(inner * inner + u * (outer * outer - inner * inner));
+				orbit(e.around, r, t, e.retrograde, state);
+				state[0] += e.x;
+				state[1] += e.y;
+				state[2] += e.vx;
+				state[3] += e.vy;
+			}
+			Body2D body = bodies.add(e.name, e.color, kind[0], kind[1], state[0], state[1], state[2], state[3]);
+			if (e.test)
+				body.setTestParticle(true);
+		}
+	}
+
+	// position and velocity at distance r and angle t on a circular orbit around body center
+	// (or standing still around the origin without one)
+	private void orbit(int center, double r, double t, boolean retrograde, double[] state) {
+		state[0] = r * Math.cos(t);
+		state[1] = r * Math.sin(t);
+		state[2] = 0.0;
+		state[3] = 0.0;
+		if (center < 0)
+			return;
+		double v = Math.sqrt(Gravity.G * bodies.mass[center] / r);
+		double direction = retrograde ? -Math.PI / 2 : Math.PI / 2;
+		state[0] += bodies.sx[center];
+		state[1] += bodies.sy[center];
+		state[2] = bodies.vx[center] + v * Math.cos(t + direction);
+		state[3] = bodies.vy[center] + v * Math.sin(t + direction);
+	}
+
+	// meters, or a string in px, vw or vh
+	private double length(JsonReader json) throws IOException {
+		if (json.peek() != JsonReader.Token.STRING)
+			return json.nextDouble();
+		String value = json.nextString().trim();
+		double unit;
+		if (value.endsWith("px"))
+			unit = screenScale;
+		else if (value.endsWith("vw"))
+			unit = viewWidth * screenScale / 100;
+		else if (value.endsWith("vh"))
+			unit = viewHeight * screenScale / 100;
+		else
+			throw json.error("Unknown length \"" + value + "\" (m, px, vw or vh)");
+		try {
+			return Double.parseDouble(value.substring(0, value.length() - 2).trim()) * unit;
+		} catch (NumberFormatException e) {
+			throw json.error("Bad length \"" + value + "\"");
+		}
+	}
+
+	// "#rrggbb", "#aarrggbb" or the name of one of Color's constants ("white")
+	private Color color(JsonReader json) throws IOException {
+		String value = json.nextString();
+		Color color = colors.get(value);
+		if (color != null)
+			return color;
+		try {
+			if (value.startsWith("#"))
+				color = new Color((int) Long.parseLong(value.substring(1), 16), value.length() > 7);
+			else
+				color = (Color) Color.class.getField(value.toUpperCase()).get(null);
+		} catch (NumberFormatException | ReflectiveOperationException | ClassCastException e) {
+			throw json.error("Unknown color \"" + value + "\"");
+		}
+		colors.put(value, color);
+		return color;
+	}
+
+	private static double require(JsonReader json, double value, String field) throws IOException {
+		if (Double.isNaN(value))
+			throw json.error("Missing \"" + field + "\"");
+		return value;
+	}
+
+	// fields of a body or generator (NaN or -1 = not given)
+	private static class Entry {
+		String generate, name;
+		Color color;
+		double mass, radius, x, y, vx, vy;
+		boolean test, orbit, retrograde, seeded;
+		int around, count;
+		long seed;
+		double distance, angle, inner, outer, width, height, speed;
+		final ArrayList<double[]> kinds = new ArrayList<>();
+
+		void clear() {
+			generate = null;
+			name = "";
+			color = Color.WHITE;
+			mass = radius = Double.NaN;
+			x = y = vx = vy = 0.0;
+			test = orbit = retrograde = seeded = false;
+			around = count = -1;
+			seed = 0;
+			distance = angle = inner = outer = width = height = Double.NaN;
+			speed = 0.0;
+			kinds.clear();
+		}
+	}
+
+}
@@ -0,0 +1,895 @@
+import java.awt.Color;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+// the simulation itself; runs on its own thread and publishes snapshots for the renderer
+public class Simulation implements Runnable {
+
+	// debug
+	private volatile boolean debug = false;
+
+	// scenario sizes (scenarios were made for a screen)
+	private final int screenWidth, screenHeight;
+	private double screenScale = 1.0; // m per pixel
+	private final double targetFPS = 60.0; // physics ticks per second
+	private final long tick_time = (long) (1000000000 / targetFPS); // ns
+	private boolean uncapped = false; // tick as fast as possible
+
+	// thread
+	private Thread thread = null;
+	private volatile boolean running = false;
+	private final ConcurrentLinkedQueue<Runnable> commands = new ConcurrentLinkedQueue<>();
+	private final SnapshotBuffer snapshots = new SnapshotBuffer();
+	private long generation = 0;
+	// steps per second
+	private long steps = 0;
+	private long stepsTime = System.nanoTime();
+	private double stepsPerSecond = 0.0;
+	private double time = 0.0; // simulated seconds since the reset
+
+	// simulation
+	private History history = new History(64); // MB for rewinding (setHistoryMB)
+	private final ArrayList<FrameListener> listeners = new ArrayList<>(); // get every saved frame (history first)
+	private volatile TrajectoryRecorder recorder = null;
+	private final int record_queue = 8; // frames the recorder can fall behind by before the simulation waits
+	private int frame = -1;
+	private int beforeHistory = 0; // leapfrog steps rewound past the oldest frame
+	private BodyStore rewindStore = null; // bodies when rewind last moved them
+	private long rewindVersion = -1;
+	private volatile boolean paused = false;
+	private boolean collisions = true;
+	private boolean tidalForces = true;
+	private double minMass = Math.pow(10, 28); // kg
+
+	// physics
+	private int physicsMode = -1;
+	// multithreading
+	private int n = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+	private WorkerPool workers = new WorkerPool(n);
+	private Gravity gravity = new Gravity(); // per-worker buffers
+	// precise
+	private final double stepSize = 60.0; // seconds
+	private final double timeStep = stepSize / targetFPS; // s
+	private int timeMult = 1;
+	// fast
+	private double timeScale = stepSize / targetFPS; // s
+	// barnes-hut
+	private BarnesHut barnesHut = new BarnesHut(0.5);
+	private final int error_samples = 64; // bodies checked against the direct sum
+	private int errorCountdown = 0; // steps until the next error check
+	// fast multipole
+	private FastMultipole fastMultipole = new FastMultipole(8);
+	// particle-mesh
+	private ParticleMesh particleMesh = new ParticleMesh(256);
+	// leapfrog
+	private boolean forcesValid = false; // accelerations match the current positions
+	private BodyStore forceStore = null;
+	private long forceVersion = -1;
+	// yoshida (4th order: 3 leapfrog steps, 6th order: 7)
+	private final double[] yoshida_4 = { 1 / (2 - Math.cbrt(2)), -Math.cbrt(2) / (2 - Math.cbrt(2)), 1 / (2 - Math.cbrt(2)) };
+	private final double[] yoshida_6 = { 0.784513610477560, 0.235573213359357, -1.17767998417887, 1 - 2 * (0.784513610477560 + 0.235573213359357 - 1.17767998417887), -1.17767998417887, 0.235573213359357, 0.784513610477560 };
+	// fast (error controlled)
+	private AdaptiveStep adaptiveStep = new AdaptiveStep(1e-6);
+	// block time steps
+	private BlockSteps blockSteps = new BlockSteps();
+	// wisdom-holman (falls back to the fast mode's integrator)
+	private WisdomHolman wisdomHolman = new WisdomHolman();
+	private int directSteps = 0; // steps the wisdom-holman left to direct integration since the reset
+	// energy drift (checked about once a second while debugging)
+	private final int energy_max_bodies = 20000; // it's a direct sum
+	private double energyStart = 0.0;
+	private BodyStore energyStore = null;
+	private long energyVersion = -1;
+	private int energyMode = -1;
+	private double energyDrift = Double.NaN;
+	// collisions
+	private SpatialGrid grid = new SpatialGrid();
+	private int[] parent = new int[0]; // union-find over overlapping bodies
+	private Body2D[] groups = new Body2D[0]; // surviving body of each group (by root)
+	private int unions = 0;
+	private long merges = 0; // bodies absorbed since the reset
+	private long colorsReused = 0; // merges that didn't need a new color
+	// tidal forces
+	private final double roche_c = 2.44; // fluid body Roche limit constant
+	private double[] reach = new double[0]; // how far each body's Roche limits can reach
+	private ArrayList<Body2D> toSplit = new ArrayList<Body2D>();
+
+	// bodies
+	private BodyStore bodies = new BodyStore();
+	private volatile Body2D selected = null;
+	private int scenario = 2;
+	private File scenarioFile = null;
+	private double cameraX = 0.0, cameraY = 0.0; // where the renderer's camera starts after a reset (m)
+	// checkpoints (written and read on their own thread)
+	private Checkpoints checkpoints = new Checkpoints();
+
+	public Simulation(double screenWidth, double screenHeight) {
+		this.screenWidth = (int) screenWidth;
+		this.screenHeight = (int) screenHeight;
+		listeners.add(history);
+
+		// load scenario
+		reset();
+		scaleTime(Math.pow(2, 8));
+		paused = !paused;
+	}
+
+	// starts the simulation thread
+	public void start() {
+		running = true;
+		thread = new Thread(this, "Simulation");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void stop() {
+		running = false;
+	}
+
+	// runs a change on the simulation thread between ticks
+	public void post(Runnable command) {
+		commands.add(command);
+	}
+
+	// newest snapshot for the renderer
+	public Snapshot snapshot() {
+		return snapshots.front();
+	}
+
+	public void run() {
+		publish();
+		long next = System.nanoTime();
+		while (running) {
+			// inputs
+			Runnable command;
+			while ((command = commands.poll()) != null)
+				command.run();
+
+			// physics
+			if (!paused)
+				tick();
+			publish();
+
+			// sampling worker utilization and steps per second about once a second
+			long now = System.nanoTime();
+			if (now - stepsTime >= 1000000000) {
+				workers.sample();
+				if (debug)
+					measureEnergy();
+				stepsPerSecond = steps / ((now - stepsTime) / 1000000000.0);
+				steps = 0;
+				stepsTime = now;
+			}
+
+			// keeping the time speed (ticks per second) unless uncapped
+			next += tick_time;
+			long wait = next - System.nanoTime();
+			if (paused || !uncapped) {
+				if (wait > 0) {
+					try {
+						TimeUnit.NANOSECONDS.sleep(wait);
+					} catch (InterruptedException e) { // something very wrong has happened
+						e.printStackTrace();
+					}
+				} else if (wait < -tick_time * 10) // too far behind; don't try to catch up
+					next = System.nanoTime();
+			} else
+				next = System.nanoTime();
+		}
+	}
+
+	// one frame's worth of physics
+	public void tick() {
+		// saving previous frame
+		addFrame();
+
+		// precise modes (0 multithreaded, 1 single) take timeMult fixed steps; the others take one
+		// step of the whole frame and split it themselves (force() picks each mode's engine)
+		if (physicsMode <= 1) {
+			for (int steps = 0; steps < timeMult; steps++)
+				step(timeStep);
+		} else
+			step(timeScale);
+	}
+
+	// relative change in total energy since the bodies or the physics mode last changed
+	private void measureEnergy() {
+		if (bodies.size() > energy_max_bodies) {
+			energyDrift = Double.NaN;
+			return;
+		}
+		double energy = gravity.energy(bodies, workers);
+		if (energyStore != bodies || energyVersion != bodies.getVersion() || energyMode != physicsMode) {
+			energyStart = energy;
+			energyStore = bodies;
+			energyVersion = bodies.getVersion();
+			energyMode = physicsMode;
+		}
+		energyDrift = (energy - energyStart) / Math.abs(energyStart);
+	}
+
+	// copying the state into the back snapshot and handing it to the renderer
+	private void publish() {
+		Snapshot s = snapshots.back();
+		s.capture(bodies, selected);
+		s.generation = generation;
+		s.screenScale = screenScale;
+		s.cameraX = cameraX;
+		s.cameraY = cameraY;
+		s.scenario = scenario;
+		s.paused = paused;
+		s.physicsMode = physicsMode;
+		s.timeMult = timeMult;
+		s.timeScale = timeScale;
+		s.timeStep = timeStep;
+		s.frames = history.size();
+		s.keyframes = history.getKeyframes();
+		s.historyBytes = history.getUsedBytes();
+		s.historyBudget = history.getBudgetBytes();
+		s.frame = frame - beforeHistory;
+		s.collisions = collisions;
+		s.tidalForces = tidalForces;
+		s.minMass = minMass;
+		s.testParticles = bodies.size() - bodies.sources();
+		s.testRatio = bodies.getTestRatio();
+		s.uncapped = uncapped;
+		s.stepsPerSecond = stepsPerSecond;
+		s.energyDrift = energyDrift;
+		s.tolerance = adaptiveStep.getTolerance();
+		s.adaptiveSteps = adaptiveStep.getSteps();
+		s.adaptiveRejected = adaptiveStep.getRejected();
+		s.levelCounts = blockSteps.getLevelCounts().clone();
+		s.blockForces = blockSteps.getForces();
+		s.substeps = wisdomHolman.getSubsteps();
+		s.directSteps = directSteps;
+		s.merges = merges;
+		s.colorsReused = colorsReused;
+		snapshots.publish();
+	}
+
+	public void reset() {
+		clear();
+
+		// scenario
+		load();
+
+		// first frame
+		addFrame();
+	}
+
+	// what every scenario and checkpoint starts from
+	private void clear() {
+		// simulation
+		paused = true;
+		collisions = true;
+		tidalForces = true;
+		timeMult = 1;
+		timeScale = stepSize / targetFPS;
+		history.clear();
+		frame = -1;
+		beforeHistory = 0;
+		forcesValid = false;
+		selected = null;
+		merges = 0;
+		colorsReused = 0;
+		directSteps = 0;
+		generation++;
+		time = 0.0;
+		// bodies
+		bodies.clear();
+		bodies.setTestRatio(0.0); // scenarios with rings or debris turn test particles on
+		// barnes-hut
+		barnesHut.setTheta(0.5);
+		// camera
+		cameraX = 0.0;
+		cameraY = 0.0;
+	}
+
+	// reads the scenario file (scenarios/N.json, or the file given with setScenarioFile) into
+	// the settings and bodies; a scenario that can't be read leaves the simulation empty
+	private void load() {
+		String name = scenario == 0 && debug ? "debug" : String.valueOf(scenario);
+		File file = scenarioFile != null ? scenarioFile : new File("scenarios", name + ".json");
+		Scenario s = new Scenario(bodies, screenWidth, screenHeight);
+		s.screenScale = screenScale;
+		s.physicsMode = physicsMode;
+		s.minMass = minMass;
+		s.collisions = collisions;
+		s.tidalForces = tidalForces;
+		s.testRatio = bodies.getTestRatio();
+		try (Reader reader = open(file, "/scenarios/" + name + ".json")) {
+			s.read(reader);
+		} catch (IOException e) {
+			System.err.println("Couldn't load scenario " + file + ": " + e.getMessage());
+			bodies.clear();
+			return;
+		}
+		screenScale = s.screenScale;
+		physicsMode = s.physicsMode;
+		minMass = s.minMass;
+		collisions = s.collisions;
+		tidalForces = s.tidalForces;
+		bodies.setTestRatio(s.testRatio);
+	}
+
+	// a file, or the resource with the same name in the jar when there's no such file
+	private Reader open(File file, String resource) throws IOException {
+		if (!file.isFile()) {
+			InputStream in = scenarioFile == null ? Simulation.class.getResourceAsStream(resource) : null;
+			if (in == null)
+				throw new FileNotFoundException("no such file");
+			return new InputStreamReader(in, StandardCharsets.UTF_8);
+		}
+		return Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+	}
+
+	public void step(double deltaTime) {
+		// actually moving
+		if (physicsMode == 4)
+			leapfrog(deltaTime);
+		else if (physicsMode == 5)
+			compose(deltaTime, yoshida_4);
+		else if (physicsMode == 6)
+			compose(deltaTime, yoshida_6);
+		else if (physicsMode == 2)
+			deltaTime = adaptiveStep.advance(bodies, deltaTime, this::force); // can fall behind in close encounters
+		else if (physicsMode == 7) {
+			blockSteps.step(bodies, deltaTime, forcesCurrent(), gravity, workers);
+			forcesValid = true;
+			forceStore = bodies;
+			forceVersion = bodies.getVersion();
+		} else if (physicsMode == 8) {
+			if (wisdomHolman.step(bodies, deltaTime, forcesCurrent(), this::force, workers)) {
+				forcesValid = true;
+				forceStore = bodies;
+				forceVersion = bodies.getVersion();
+			} else { // no dominant body, or bodies too close to split the step for
+				deltaTime = adaptiveStep.advance(bodies, deltaTime, this::force);
+				directSteps++;
+			}
+		} else {
+			force();
+			kick(deltaTime);
+			drift(deltaTime);
+		}
+		// split check
+		splitCheck();
+		// collision check
+		colCheck();
+		steps++;
+		time += deltaTime;
+	}
+
+	// kick-drift-kick (velocity verlet); it's time-symmetric, so a negative deltaTime retraces
+	// a step (without collisions or splits, which can't be undone)
+	public void leapfrog(double deltaTime) {
+		// the accelerations from the end of the last step are still good unless something changed
+		if (!forcesCurrent())
+			force();
+		kick(deltaTime / 2);
+		drift(deltaTime);
+		force();
+		kick(deltaTime / 2);
+		forcesValid = true;
+		forceStore = bodies;
+		forceVersion = bodies.getVersion();
+	}
+
+	// whether the accelerations (from the end of the last step) match the positions
+	private boolean forcesCurrent() {
+		return forcesValid && forceStore == bodies && forceVersion == bodies.getVersion();
+	}
+
+	// leapfrog steps of deltaTime times each weight (yoshida's higher order compositions); the
+	// force at the end of one step is the start of the next, so it's one force per weight
+	public void compose(double deltaTime, double[] weights) {
+		for (double w : weights)
+			leapfrog(w * deltaTime);
+	}
+
+	// calculating the accelerations
+	public void force() {
+		forcesValid = false;
+		if (physicsMode == 3) {
+			barnesHut.accelerate(bodies);
+			// checking the tree against the direct sum about once a second
+			if (debug && --errorCountdown <= 0) {
+				barnesHut.measureError(error_samples);
+				errorCountdown = (int) targetFPS;
+			}
+		} else if (physicsMode == 9) {
+			fastMultipole.accelerate(bodies, workers);
+			if (debug && --errorCountdown <= 0) {
+				fastMultipole.measureError(error_samples);
+				errorCountdown = (int) targetFPS;
+			}
+		} else if (physicsMode == 10) {
+			particleMesh.accelerate(bodies, workers);
+			if (debug && --errorCountdown <= 0) {
+				particleMesh.measureError(error_samples);
+				errorCountdown = (int) targetFPS;
+			}
+		}
+		// splitting the force loop between the workers (waits for them to finish)
+		else if (physicsMode == 0 || physicsMode >= 4)
+			gravity.accelerate(bodies, workers);
+		else
+			Gravity.accelerate(bodies);
+	}
+
+	// updating velocities from the accelerations
+	public void kick(double timeStep) {
+		int n = bodies.size();
+		double[] vx = bodies.vx, vy = bodies.vy, ax = bodies.ax, ay = bodies.ay;
+		for (int i = 0; i < n; i++) {
+			vx[i] += ax[i] * timeStep;
+			vy[i] += ay[i] * timeStep;
+		}
+	}
+
+	// updating positions from the velocities
+	public void drift(double timeStep) {
+		int n = bodies.size();
+		double[] sx = bodies.sx, sy = bodies.sy, vx = bodies.vx, vy = bodies.vy;
+		for (int i = 0; i < n; i++) {
+			sx[i] += vx[i] * timeStep;
+			sy[i] += vy[i] * timeStep;
+		}
+	}
+
+	// collision detection
+	public void colCheck() {
+		// checking if collisions are turned on
+		if (collisions == true) {
+			// a merged body can overlap bodies it didn't before, so passes repeat until nothing merges
+			while (mergeOverlaps() > 0)
+				;
+		}
+	}
+
+	// merges every group of overlapping bodies at once; returns the number of bodies absorbed
+	private int mergeOverlaps() {
+		int n = bodies.size();
+		if (n < 2)
+			return 0;
+		final double[] sx = bodies.sx, sy = bodies.sy, radius = bodies.radius;
+
+		// joining overlapping pairs into groups (union-find)
+		if (parent.length < n) {
+			parent = new int[Math.max(n, parent.length * 2)];
+			groups = new Body2D[parent.length];
+		}
+		for (int i = 0; i < n; i++)
+			parent[i] = i;
+		unions = 0;
+		SpatialGrid.PairVisitor overlap = (i, j) -> {
+			double dx = sx[j] - sx[i];
+			double dy = sy[j] - sy[i];
+			double r = radius[i] + radius[j];
+			if (dx * dx + dy * dy < r * r) {
+				int a = find(i), b = find(j);
+				if (a != b) {
+					parent[b] = a;
+					unions++;
+				}
+			}
+		};
+		grid.forEachCandidate(sx, sy, radius, n, overlap); // pairs seen twice are already joined
+		if (unions == 0)
+			return 0;
+
+		// merging each group into its heaviest body (no new bodies)
+		Body2D[] absorbed = new Body2D[unions];
+		int count = 0;
+		for (int i = 0; i < n; i++) {
+			int root = find(i);
+			if (root == i)
+				continue;
+			Body2D survivor = groups[root] == null ? bodies.get(root) : groups[root];
+			Body2D body = bodies.get(i);
+			if (body.getMass() > survivor.getMass()) {
+				Body2D lighter = survivor;
+				survivor = body;
+				body = lighter;
+			}
+			Color c = survivor.getColor();
+			survivor.absorb(body);
+			if (survivor.getColor() == c)
+				colorsReused++;
+			groups[root] = survivor;
+			absorbed[count++] = body;
+		}
+		if (selected != null && selected.getStore() == bodies) {
+			Body2D survivor = groups[find(selected.getIndex())];
+			if (survivor != null)
+				selected = survivor;
+		}
+		for (int i = 0; i < n; i++)
+			groups[i] = null;
+
+		// recycling the absorbed bodies' slots (swap-remove)
+		for (int i = 0; i < count; i++)
+			bodies.discard(absorbed[i]);
+		merges += count;
+		return count;
+	}
+
+	// root of a body's group (with path halving)
+	private int find(int i) {
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+
+	// splitting bodies
+	public boolean splitBody(Body2D body) {
+		if (body.getStore() != bodies) // already gone (e.g. clicked in an older snapshot)
+			return false;
+		if ((body.getMass() / 4) > minMass) { // lag prevention
+			double nr = body.getRadius() / Math.cbrt(4); // radius (a quarter of the volume)
+			double nm = body.getMass() / 4; // mass
+			// original body's location
+			double sx = body.getSX();
+			double sy = body.getSY();
+			// random rotation
+			double rr = Math.random() * Math.PI / 2; // in radians
+			// splits into four bodies
+			for (int i = -1; i <= 1; i += 2) {
+				for (int j = -1; j <= 1; j += 2) {
+					// 2x2 square shape
+					double nx = sx + (body.getRadius() - nr / 2) * i; // new x coordinate
+					double ny = sy + (body.getRadius() - nr / 2) * j; // new y coordinate
+					// convert to polar and rotate randomly
+					double dx = nx - sx; // difference between new split body and original body
+					double dy = ny - sy;
+					double dr = Math.sqrt(Math.pow(dx, 2) + Math.pow(dy, 2)); // magnitude of difference vector
+					double t = Math.acos(dx / dr); // theta
+					if (dy < 0)
+						t *= -1;
+					t += rr; // random rotation
+					// converting back to cartesian coordinates
+					nx = dr * Math.cos(t) + sx;
+					ny = dr * Math.sin(t) + sy;
+					Body2D piece = new Body2D(body.getColor(), nm, nr, nx, ny, body.getVX(), body.getVY());
+					piece.setTestParticle(body.isTestParticle());
+					bodies.add(piece);
+				}
+			}
+			if (selected == body)
+				selected = bodies.get(bodies.size() - 1 - (int) (Math.random() * 4));
+			bodies.discard(body);
+			// paused = true; // used for debugging
+			return true; // body was split
+		}
+		return false; // body was not split
+	}
+
+	// Roche limit detection
+	public void splitCheck() {
+		if (tidalForces == true) {
+			int n = bodies.size();
+			final double[] sx = bodies.sx, sy = bodies.sy, massRoot = bodies.massRoot, rocheRadius = bodies.rocheRadius;
+			bodies.sources();
+			final boolean[] test = bodies.test; // test particles can be pulled apart but don't pull anything apart
+
+			// a body can't pull anything apart from further than c * (the biggest rocheRadius) * its massRoot
+			double maxRocheRadius = 0.0;
+			for (int i = 0; i < n; i++)
+				maxRocheRadius = Math.max(maxRocheRadius, rocheRadius[i]);
+			if (reach.length < n)
+				reach = new double[Math.max(n, reach.length * 2)];
+			for (int i = 0; i < n; i++)
+				reach[i] = test[i] ? 0.0 : roche_c * maxRocheRadius * massRoot[i];
+
+			// calculations (only pairs within that reach)
+			grid.forEachCandidate(sx, sy, reach, n, (i, j) -> {
+				double x = sx[j] - sx[i];
+				double y = sy[j] - sy[i];
+				double z2 = x * x + y * y;
+				// Roche limits: c * radius * (other mass / mass)^(1/3)
+				double d1 = roche_c * rocheRadius[i] * massRoot[j];
+				double d2 = roche_c * rocheRadius[j] * massRoot[i];
+				// checking
+				if (z2 < d1 * d1 && !test[j])
+					bodies.get(i).toSplit = true;
+				if (z2 < d2 * d2 && !test[i])
+					bodies.get(j).toSplit = true;
+			});
+
+			// actually splitting (all at once, since splitting moves bodies around)
+			toSplit.clear();
+			for (int i = 0; i < n; i++) {
+				Body2D body = bodies.get(i);
+				if (body.toSplit) {
+					body.toSplit = false;
+					toSplit.add(body);
+				}
+			}
+			for (Body2D body : toSplit)
+				splitBody(body);
+		}
+	}
+
+	// copies the state into the checkpoint buffer and writes it in the background (false if the
+	// last checkpoint is still being written); the camera is the renderer's
+	public boolean saveCheckpoint(File file, double cameraX, double cameraY, double cameraScale) {
+		Checkpoint c = checkpoints.begin();
+		if (c == null)
+			return false;
+		c.capture(bodies, selected);
+		c.time = time;
+		c.timeScale = timeScale;
+		c.timeMult = timeMult;
+		c.physicsMode = physicsMode;
+		c.screenScale = cameraScale;
+		c.cameraX = cameraX;
+		c.cameraY = cameraY;
+		c.minMass = minMass;
+		c.testRatio = bodies.getTestRatio();
+		c.collisions = collisions;
+		c.tidalForces = tidalForces;
+		checkpoints.write(file);
+		return true;
+	}
+
+	// reads a checkpoint in the background and switches to it between ticks
+	public void loadCheckpoint(File file) {
+		checkpoints.read(file, c -> post(() -> restore(c)));
+	}
+
+	// replaces the state with a checkpoint's (paused, like a reset)
+	public void restore(Checkpoint c) {
+		clear();
+		time = c.time;
+		timeScale = c.timeScale;
+		timeMult = c.timeMult;
+		physicsMode = c.physicsMode;
+		screenScale = c.screenScale;
+		cameraX = c.cameraX;
+		cameraY = c.cameraY;
+		minMass = c.minMass;
+		collisions = c.collisions;
+		tidalForces = c.tidalForces;
+		bodies.setTestRatio(c.testRatio);
+		c.restore(bodies);
+		if (c.selected >= 0)
+			selected = bodies.get(c.selected);
+		addFrame();
+	}
+
+	// saving frame for rewinding (and for the recorder, if there is one)
+	public void addFrame() {
+		// the leapfrog can get back to its frames from the keyframes
+		history.setFull(physicsMode != 4);
+		for (FrameListener listener : listeners)
+			listener.frame(bodies, time);
+		frame = history.size() - 1;
+		rewindStore = null; // the bodies are about to move on from the frame
+	}
+
+	// records every frames to file from now on (see TrajectoryRecorder)
+	public void startRecording(File file, int every, boolean quantize, boolean deltas) throws IOException {
+		stopRecording();
+		recorder = new TrajectoryRecorder(file, every, quantize, deltas, record_queue);
+		listeners.add(recorder);
+	}
+
+	// finishes the recording (waits for the queued frames to be written)
+	public void stopRecording() {
+		if (recorder == null)
+			return;
+		listeners.remove(recorder);
+		try {
+			recorder.close();
+		} catch (IOException e) {
+			System.err.println("Couldn't finish recording " + recorder.getFile() + ": " + e.getMessage());
+		}
+		recorder = null;
+	}
+
+	// starts recording every frame to file (as keyframes and offsets), or stops recording
+	public void toggleRecording(File file) {
+		if (recorder != null) {
+			stopRecording();
+			return;
+		}
+		try {
+			startRecording(file, 1, false, true);
+		} catch (IOException e) {
+			System.err.println("Couldn't record to " + file + ": " + e.getMessage());
+		}
+	}
+
+	// pause toggle; unpausing after a rewind deletes the future frames
+	public void togglePause() {
+		paused = !paused;
+		if (paused == false) {
+			if (beforeHistory > 0) { // rewound past the saved frames; all of them are the future now
+				history.clear();
+				frame = -1;
+				beforeHistory = 0;
+			} else
+				history.truncate(frame);
+		}
+	}
+
+	// moving through the saved frames while paused (the leapfrog can keep going back past them)
+	public void rewind(int delta) {
+		if (!paused)
+			return;
+		int direction = delta < 0 ? -1 : 1;
+		for (int k = 0; k < Math.abs(delta); k++) {
+			if (physicsMode == 4 && (beforeHistory > 0 || history.size() == 0 || (frame == 0 && direction < 0))) {
+				// outside the saved frames: integrating backwards (and forwards again)
+				if (direction > 0 && beforeHistory == 0)
+					break;
+				if (direction > 0 && beforeHistory == 1 && history.size() > 0)
+					showFrame(0);
+				else {
+					leapfrog(direction * timeScale);
+					time += direction * timeScale;
+				}
+				beforeHistory -= direction;
+			} else if (history.size() > 0) {
+				int target = Math.max(0, Math.min(history.size() - 1, frame + direction));
+				if (target != frame || !onFrame())
+					showFrame(target);
+			}
+		}
+		rewindStore = bodies;
+		rewindVersion = bodies.getVersion();
+	}
+
+	// whether the bodies are still exactly where rewind left them
+	private boolean onFrame() {
+		return frame >= 0 && beforeHistory == 0 && rewindStore == bodies && rewindVersion == bodies.getVersion();
+	}
+
+	// puts a saved frame back; frames that only kept their time are integrated to from the
+	// current frame (if it's next to them) or from their keyframe
+	private void showFrame(int target) {
+		if (history.isFull(target)) {
+			time = history.restore(target, bodies);
+			forcesValid = false;
+		} else {
+			int key = history.getKeyframe(target);
+			int from = frame;
+			if (!onFrame() || history.getKeyframe(from) != key || Math.abs(target - from) > target - key) {
+				time = history.restore(key, bodies);
+				forcesValid = false;
+				from = key;
+			}
+			int direction = target > from ? 1 : -1;
+			for (int f = from; f != target; f += direction) {
+				double frameTime = history.getTime(f + direction);
+				leapfrog(frameTime - time);
+				time = frameTime;
+			}
+		}
+		frame = target;
+		beforeHistory = 0;
+	}
+
+	// scale time by x
+	public void scaleTime(double x) {
+		if (timeScale * x >= 1) { // no sub-second time speeds
+			timeMult *= x;
+			timeScale *= x;
+		}
+	}
+
+	// nothing to see here
+	public void randomColors() {
+		for (Body2D body : bodies)
+			body.setColor(random_color());
+	}
+
+	// generates random color
+	public Color random_color() {
+		return new Color((int) (Math.random() * 255), (int) (Math.random() * 255), (int) (Math.random() * 255));
+	}
+
+	// memory for rewinding (clears the saved frames)
+	public void setHistoryMB(int megabytes) {
+		listeners.set(listeners.indexOf(history), history = new History(megabytes));
+		frame = -1;
+	}
+
+	public void setScenario(int scenario) {
+		this.scenario = scenario;
+		scenarioFile = null;
+	}
+
+	// loads this file instead of a numbered scenario (until the next setScenario)
+	public void setScenarioFile(File file) {
+		scenarioFile = file;
+	}
+
+	public void setPhysicsMode(int physicsMode) {
+		this.physicsMode = physicsMode;
+		forcesValid = false;
+	}
+
+	public void setSelected(Body2D selected) {
+		this.selected = selected;
+	}
+
+	public void setDebug(boolean debug) {
+		this.debug = debug;
+	}
+
+	public void toggleUncapped() {
+		uncapped = !uncapped;
+	}
+
+	public boolean isPaused() {
+		return paused;
+	}
+
+	public int getPhysicsMode() {
+		return physicsMode;
+	}
+
+	// replaces the bodies (benchmarks and loading)
+	public void setBodies(BodyStore bodies) {
+		this.bodies = bodies;
+		selected = null;
+	}
+
+	public BodyStore getBodies() {
+		return bodies;
+	}
+
+	public double getScreenScale() {
+		return screenScale;
+	}
+
+	public double getTime() {
+		return time;
+	}
+
+	public AdaptiveStep getAdaptiveStep() {
+		return adaptiveStep;
+	}
+
+	public FastMultipole getFastMultipole() {
+		return fastMultipole;
+	}
+
+	public ParticleMesh getParticleMesh() {
+		return particleMesh;
+	}
+
+	public WisdomHolman getWisdomHolman() {
+		return wisdomHolman;
+	}
+
+	public BarnesHut getBarnesHut() {
+		return barnesHut;
+	}
+
+	public WorkerPool getWorkers() {
+		return workers;
+	}
+
+	// null when not recording
+	public TrajectoryRecorder getRecorder() {
+		return recorder;
+	}
+
+	public Checkpoints getCheckpoints() {
+		return checkpoints;
+	}
+
+}
@@ -0,0 +1,101 @@
+import java.awt.Color;
+import java.util.Arrays;
+
+// copy of the simulation state for the renderer (written by the simulation thread only)
+public class Snapshot {
+
+	// bodies
+	public int n = 0;
+	public double[] sx = new double[0], sy = new double[0];
+	public double[] vx = new double[0], vy = new double[0];
+	public double[] mass = new double[0], radius = new double[0];
+	public Color[] colors = new Color[0];
+	public Body2D[] handles = new Body2D[0];
+
+	// selected body (-1 = none)
+	public int selected = -1;
+	public double selectedAX = 0.0, selectedAY = 0.0;
+
+	// barycenter
+	public double bx = 0.0, by = 0.0;
+
+	// simulation
+	public long generation = 0; // increased by every reset
+	public double screenScale = 1.0; // scenario's starting m per pixel
+	public double cameraX = 0.0, cameraY = 0.0; // where the camera starts (m)
+	public int scenario = 0;
+	public boolean paused = false;
+	public int physicsMode = 0;
+	public int timeMult = 1;
+	public double timeScale = 0.0;
+	public double timeStep = 0.0;
+	public int frames = 0, frame = -1;
+	public int keyframes = 0;
+	public long historyBytes = 0, historyBudget = 0;
+	public boolean collisions = true;
+	public boolean tidalForces = true;
+	public double minMass = 0.0;
+	public int testParticles = 0;
+	public double testRatio = 0.0; // lighter than this times the heaviest body = test particle
+	public boolean uncapped = false;
+	public double stepsPerSecond = 0.0;
+	public double energyDrift = Double.NaN; // relative (NaN = not measured)
+	public double tolerance = 0.0; // fast mode: error tolerance
+	public int adaptiveSteps = 0, adaptiveRejected = 0; // fast mode: steps in the last frame
+	public int[] levelCounts = new int[0]; // block time steps: bodies per level
+	public long blockForces = 0; // block time steps: force evaluations in the last step
+	public int substeps = 0; // wisdom-holman: sub-steps of the last step (0 = integrated directly)
+	public int directSteps = 0; // wisdom-holman: steps integrated directly since the reset
+	public long merges = 0, colorsReused = 0;
+
+	// copies the bodies' arrays
+	public void capture(BodyStore bodies, Body2D selectedBody) {
+		n = bodies.size();
+		if (sx.length < n) {
+			int size = Math.max(n, sx.length * 2);
+			sx = new double[size];
+			sy = new double[size];
+			vx = new double[size];
+			vy = new double[size];
+			mass = new double[size];
+			radius = new double[size];
+			colors = new Color[size];
+			handles = new Body2D[size];
+		}
+		System.arraycopy(bodies.sx, 0, sx, 0, n);
+		System.arraycopy(bodies.sy, 0, sy, 0, n);
+		System.arraycopy(bodies.vx, 0, vx, 0, n);
+		System.arraycopy(bodies.vy, 0, vy, 0, n);
+		System.arraycopy(bodies.mass, 0, mass, 0, n);
+		System.arraycopy(bodies.radius, 0, radius, 0, n);
+		for (int i = 0; i < n; i++) {
+			handles[i] = bodies.get(i);
+			colors[i] = handles[i].getColor();
+		}
+		// not holding on to removed bodies
+		Arrays.fill(handles, n, handles.length, null);
+
+		// selection
+		selected = -1;
+		if (selectedBody != null && selectedBody.getStore() == bodies) {
+			selected = selectedBody.getIndex();
+			selectedAX = bodies.ax[selected];
+			selectedAY = bodies.ay[selected];
+		}
+
+		// barycenter
+		double m = 0.0;
+		bx = 0.0;
+		by = 0.0;
+		for (int i = 0; i < n; i++) {
+			bx += mass[i] * sx[i];
+			by += mass[i] * sy[i];
+			m += mass[i];
+		}
+		if (m > 0) {
+			bx /= m;
+			by /= m;
+		}
+	}
+
+}
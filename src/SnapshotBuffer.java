@@ -0,0 +1,30 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+// lock-free triple buffer: the simulation fills one snapshot while the renderer reads another
+public class SnapshotBuffer {
+
+	private final Snapshot[] buffers = { new Snapshot(), new Snapshot(), new Snapshot() };
+
+	// index of the buffer in the middle, plus a flag (4) when it holds an unread snapshot
+	private final AtomicInteger middle = new AtomicInteger(1);
+	private int back = 0; // only touched by the writer
+	private int front = 2; // only touched by the reader
+
+	// snapshot the writer fills next
+	public Snapshot back() {
+		return buffers[back];
+	}
+
+	// swaps the filled snapshot into the middle
+	public void publish() {
+		back = middle.getAndSet(back | 4) & 3;
+	}
+
+	// newest published snapshot
+	public Snapshot front() {
+		if ((middle.get() & 4) != 0)
+			front = middle.getAndSet(front) & 3;
+		return buffers[front];
+	}
+
+}
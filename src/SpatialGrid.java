@@ -0,0 +1,189 @@
+import java.util.Arrays;
+
+// uniform grid over the bodies for finding nearby pairs without checking every pair
+public class SpatialGrid {
+
+	// visited once for every pair of bodies in the same or neighboring cells
+	public interface PairVisitor {
+		void pair(int i, int j);
+	}
+
+	private final int cells_per_body = 4; // caps the grid size (cells get bigger instead)
+	private final double big_reach = 4.0; // times the average reach; bigger bodies search the cells they cover
+
+	// grid
+	private double minX, minY;
+	private double cellSize;
+	private int columns, rows;
+	private int[] cellStart = new int[0]; // bodies of cell c are order[cellStart[c]] to order[cellStart[c + 1] - 1]
+	private int[] order = new int[0]; // body indexes sorted by cell
+	private int[] cellOf = new int[0]; // cell of each body
+	private int[] bigBodies = new int[16];
+
+	// sorts bodies 0 to n - 1 into cells of at least cellSize (0 = as small as the cap allows)
+	public void build(double[] x, double[] y, int n, double cellSize) {
+		if (cellOf.length < n) {
+			int size = Math.max(n, cellOf.length * 2);
+			cellOf = new int[size];
+			order = new int[size];
+		}
+		if (n == 0) {
+			columns = rows = 0;
+			return;
+		}
+
+		// bounds
+		double maxX = x[0], maxY = y[0];
+		minX = x[0];
+		minY = y[0];
+		for (int i = 1; i < n; i++) {
+			minX = Math.min(minX, x[i]);
+			maxX = Math.max(maxX, x[i]);
+			minY = Math.min(minY, y[i]);
+			maxY = Math.max(maxY, y[i]);
+		}
+
+		// cell size (grown until the grid fits the cap)
+		double extent = Math.max(maxX - minX, maxY - minY);
+		double maxCells = (double) cells_per_body * n + 16;
+		if (!(cellSize > 0))
+			cellSize = extent > 0 ? extent / Math.sqrt(maxCells) : 1.0;
+		if (Double.isInfinite(extent) || Double.isNaN(extent))
+			cellSize = Double.POSITIVE_INFINITY;
+		while (true) {
+			double c = Math.floor((maxX - minX) / cellSize) + 1;
+			double r = Math.floor((maxY - minY) / cellSize) + 1;
+			if (!(c * r > maxCells)) { // also stops on NaN
+				c = Double.isNaN(c) ? 1 : c;
+				r = Double.isNaN(r) ? 1 : r;
+				columns = (int) c;
+				rows = (int) r;
+				break;
+			}
+			cellSize *= 2;
+		}
+		this.cellSize = cellSize;
+
+		// counting sort by cell
+		int cells = columns * rows;
+		if (cellStart.length < cells + 1)
+			cellStart = new int[Math.max(cells + 1, cellStart.length * 2)];
+		Arrays.fill(cellStart, 0, cells + 1, 0);
+		for (int i = 0; i < n; i++) {
+			int cx = (int) ((x[i] - minX) / cellSize);
+			int cy = (int) ((y[i] - minY) / cellSize);
+			cellOf[i] = Math.min(cy, rows - 1) * columns + Math.min(cx, columns - 1);
+			cellStart[cellOf[i] + 1]++;
+		}
+		for (int c = 0; c < cells; c++)
+			cellStart[c + 1] += cellStart[c];
+		int[] fill = Arrays.copyOf(cellStart, cells);
+		for (int i = 0; i < n; i++)
+			order[fill[cellOf[i]]++] = i;
+	}
+
+	// builds the grid and visits every pair that might be closer than reach[i] + reach[j]
+	// (pairs with a big body may be visited twice)
+	public void forEachCandidate(double[] x, double[] y, double[] reach, int n, PairVisitor visitor) {
+		if (n < 2)
+			return;
+
+		// cells as wide as two of the usual reaches; bodies that reach much further than the
+		// average (a sun among planets) would make every cell huge, so they're kept apart
+		double meanReach = 0.0;
+		for (int i = 0; i < n; i++)
+			meanReach += reach[i];
+		double bigReach = big_reach * meanReach / n;
+		double maxReach = 0.0;
+		int big = 0;
+		for (int i = 0; i < n; i++) {
+			if (reach[i] > bigReach) {
+				if (bigBodies.length == big)
+					bigBodies = Arrays.copyOf(bigBodies, big * 2);
+				bigBodies[big++] = i;
+			} else
+				maxReach = Math.max(maxReach, reach[i]);
+		}
+		build(x, y, n, 2 * maxReach);
+		if (maxReach > 0) // otherwise only the big bodies reach anything (e.g. around test particles)
+			forEachPair(visitor);
+
+		// big bodies search the cells around them and check each other directly
+		for (int a = 0; a < big; a++) {
+			int i = bigBodies[a];
+			forEachNear(i, x[i], y[i], reach[i] + maxReach, visitor);
+			for (int b = a + 1; b < big; b++)
+				visitor.pair(i, bigBodies[b]);
+		}
+	}
+
+	// every pair in the same or adjacent cells, each once
+	public void forEachPair(PairVisitor visitor) {
+		for (int row = 0; row < rows; row++) {
+			for (int column = 0; column < columns; column++) {
+				int c = row * columns + column;
+				int start = cellStart[c], end = cellStart[c + 1];
+				if (start == end)
+					continue;
+				// same cell
+				for (int a = start; a < end; a++)
+					for (int b = a + 1; b < end; b++)
+						visitor.pair(order[a], order[b]);
+				// half of the neighbors (right, and the three above) so no pair is seen twice
+				if (column + 1 < columns)
+					cellPairs(visitor, start, end, c + 1);
+				if (row + 1 < rows) {
+					if (column > 0)
+						cellPairs(visitor, start, end, c + columns - 1);
+					cellPairs(visitor, start, end, c + columns);
+					if (column + 1 < columns)
+						cellPairs(visitor, start, end, c + columns + 1);
+				}
+			}
+		}
+	}
+
+	// body i paired with every body in the cells within reach of (x, y)
+	public void forEachNear(int i, double x, double y, double reach, PairVisitor visitor) {
+		if (columns == 0)
+			return;
+		int column0 = cell(x - reach - minX, columns), column1 = cell(x + reach - minX, columns);
+		int row0 = cell(y - reach - minY, rows), row1 = cell(y + reach - minY, rows);
+		for (int row = row0; row <= row1; row++) {
+			for (int column = column0; column <= column1; column++) {
+				int c = row * columns + column;
+				for (int b = cellStart[c]; b < cellStart[c + 1]; b++)
+					if (order[b] != i)
+						visitor.pair(i, order[b]);
+			}
+		}
+	}
+
+	// cell column or row of an offset from the grid's corner (clamped to the grid)
+	private int cell(double offset, int cells) {
+		double c = Math.floor(offset / cellSize);
+		if (!(c > 0))
+			return 0;
+		return (int) Math.min(c, cells - 1);
+	}
+
+	private void cellPairs(PairVisitor visitor, int start, int end, int other) {
+		int otherStart = cellStart[other], otherEnd = cellStart[other + 1];
+		for (int a = start; a < end; a++)
+			for (int b = otherStart; b < otherEnd; b++)
+				visitor.pair(order[a], order[b]);
+	}
+
+	public double getCellSize() {
+		return cellSize;
+	}
+
+	public int getColumns() {
+		return columns;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+}
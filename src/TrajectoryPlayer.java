@@ -0,0 +1,310 @@
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+
+// plays a recording (see TrajectoryRecorder) back without simulating. the file is mapped one
+// chunk at a time and each frame is decoded into the same snapshot, so memory depends on the
+// number of bodies and not on how long the recording is. frames between keyframes are decoded
+// forwards from their keyframe, so playing backwards costs more than playing forwards
+public class TrajectoryPlayer {
+
+	private final File file;
+	private final FileChannel channel;
+	private final boolean quantized;
+	private final long frames;
+	private final int chunks;
+	private final LongBuffer index; // file offset of each chunk (mapped from the file when it has one)
+	private final ByteBuffer small = ByteBuffer.allocate(TrajectoryRecorder.chunk_header_bytes).order(ByteOrder.LITTLE_ENDIAN);
+
+	// chunk that is mapped
+	private int chunk = -1;
+	private ByteBuffer mapped = null;
+	private long chunkFirst = 0;
+	private int chunkFrames = 0;
+	private int payloadStart = 0;
+
+	// decoded frame
+	private long frame = -1;
+	private double time = 0.0;
+	private final Snapshot snapshot = new Snapshot();
+	private final HashMap<Integer, Color> colors = new HashMap<>();
+	private float[] scratch = new float[0];
+
+	// playback
+	private double position = 0.0; // frame (fractional at slow speeds)
+	private double speed = 1.0; // frames per tick (negative = backwards)
+	private boolean paused = false;
+
+	public TrajectoryPlayer(File file) throws IOException {
+		this.file = file;
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			ByteBuffer header = read(0, TrajectoryRecorder.header_bytes);
+			if (header.getLong() != TrajectoryRecorder.magic)
+				throw new IOException("Not a trajectory recording");
+			int fileVersion = header.getInt();
+			if (fileVersion != TrajectoryRecorder.version)
+				throw new IOException("Recording version " + fileVersion + " (this version reads " + TrajectoryRecorder.version + ")");
+			quantized = (header.getInt() & TrajectoryRecorder.flag_quantized) != 0;
+
+			// the index from the trailer, or (for a recording that wasn't closed) the chunks in order
+			ByteBuffer trailer = size >= TrajectoryRecorder.header_bytes + TrajectoryRecorder.trailer_bytes ? read(size - TrajectoryRecorder.trailer_bytes, TrajectoryRecorder.trailer_bytes) : null;
+			if (trailer != null && trailer.getLong(8 + 4 + 8) == TrajectoryRecorder.end_magic) {
+				long indexOffset = trailer.getLong();
+				chunks = trailer.getInt();
+				frames = trailer.getLong();
+				index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, chunks * 8L).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+			} else {
+				long[] offsets = new long[64];
+				int count = 0;
+				long total = 0;
+				long at = TrajectoryRecorder.header_bytes;
+				while (at + TrajectoryRecorder.chunk_header_bytes <= size) {
+					ByteBuffer chunkHeader = read(at, TrajectoryRecorder.chunk_header_bytes);
+					if (chunkHeader.getInt() != TrajectoryRecorder.chunk_magic)
+						break;
+					int n = chunkHeader.getInt();
+					chunkHeader.getLong();
+					long end = at + TrajectoryRecorder.chunk_header_bytes + 4L * n + chunkHeader.getInt();
+					if (end > size) // cut off mid-chunk
+						break;
+					if (count == offsets.length)
+						offsets = Arrays.copyOf(offsets, count * 2);
+					offsets[count++] = at;
+					total += n;
+					at = end;
+				}
+				chunks = count;
+				frames = total;
+				index = LongBuffer.wrap(offsets, 0, count).slice();
+			}
+			if (frames == 0)
+				throw new IOException("The recording has no frames");
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+		show(0);
+	}
+
+	// moves the playback on by one tick (the renderer's frame)
+	public void tick() {
+		if (paused)
+			return;
+		position += speed;
+		if (position <= 0 || position >= frames - 1) { // stopping at either end
+			position = Math.max(0, Math.min(frames - 1, position));
+			paused = true;
+		}
+		show((long) position);
+	}
+
+	// jumps to a frame
+	public void seek(long target) {
+		position = Math.max(0, Math.min(frames - 1, target));
+		show((long) position);
+	}
+
+	// one frame forwards or backwards
+	public void step(int direction) {
+		seek(frame + direction);
+	}
+
+	public void togglePause() {
+		paused = !paused;
+		if (!paused && ((speed > 0 && frame == frames - 1) || (speed < 0 && frame == 0))) // replaying from the other end
+			seek(speed > 0 ? 0 : frames - 1);
+	}
+
+	// plays forwards (1) or backwards (-1)
+	public void setDirection(int direction) {
+		speed = Math.copySign(speed, direction);
+	}
+
+	// faster or slower (up to 1024 frames per tick, down to one frame every 64 ticks)
+	public void scaleSpeed(double x) {
+		double s = Math.abs(speed) * x;
+		if (s <= 1024 && s >= 1.0 / 64)
+			speed *= x;
+	}
+
+	// decodes a frame into the snapshot
+	private void show(long target) {
+		if (target == frame)
+			return;
+		try {
+			int c = chunkOf(target);
+			boolean forwards = c == chunk && frame >= chunkFirst && target > frame;
+			if (c != chunk)
+				map(c);
+			int k = (int) (target - chunkFirst);
+			int from;
+			if (forwards)
+				from = (int) (frame - chunkFirst) + 1;
+			else {
+				from = k;
+				while (from > 0 && mapped.getInt(frameAt(from) + 12) != TrajectoryRecorder.key)
+					from--;
+			}
+			for (int f = from; f <= k; f++)
+				decode(f);
+			frame = target;
+		} catch (IOException e) {
+			System.err.println("Couldn't read " + file + ": " + e.getMessage());
+			paused = true;
+		}
+	}
+
+	// chunk holding a frame (binary search on the chunks' first frames)
+	private int chunkOf(long target) throws IOException {
+		if (chunk >= 0 && target >= chunkFirst && target < chunkFirst + chunkFrames)
+			return chunk;
+		int low = 0, high = chunks - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (read(index.get(middle) + 8, 8).getLong() <= target)
+				low = middle;
+			else
+				high = middle - 1;
+		}
+		return low;
+	}
+
+	private void map(int c) throws IOException {
+		long offset = index.get(c);
+		ByteBuffer header = read(offset, TrajectoryRecorder.chunk_header_bytes);
+		if (header.getInt() != TrajectoryRecorder.chunk_magic)
+			throw new IOException("damaged chunk at " + offset);
+		chunkFrames = header.getInt();
+		chunkFirst = header.getLong();
+		int payload = header.getInt();
+		payloadStart = TrajectoryRecorder.chunk_header_bytes + 4 * chunkFrames;
+		mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset, payloadStart + (long) payload).order(ByteOrder.LITTLE_ENDIAN);
+		chunk = c;
+		frame = -1; // the decoded frame isn't in this chunk
+	}
+
+	// where frame k of the chunk starts
+	private int frameAt(int k) {
+		return payloadStart + mapped.getInt(TrajectoryRecorder.chunk_header_bytes + 4 * k);
+	}
+
+	private void decode(int k) {
+		int p = frameAt(k);
+		time = mapped.getDouble(p);
+		int n = mapped.getInt(p + 8);
+		boolean keyframe = mapped.getInt(p + 12) == TrajectoryRecorder.key;
+		p += TrajectoryRecorder.frame_header_bytes;
+		Snapshot s = snapshot;
+		if (keyframe) {
+			resize(n);
+			for (double[] column : new double[][] { s.sx, s.sy, s.vx, s.vy, s.radius })
+				p = readColumn(p, column, n);
+			for (int i = 0; i < n; i++)
+				s.colors[i] = Checkpoint.color(mapped.getInt(p + 4 * i), colors); // black holes stay Color.BLACK
+		} else {
+			for (double[] column : new double[][] { s.sx, s.sy, s.vx, s.vy }) {
+				float[] offsets = floats(p, n);
+				for (int i = 0; i < n; i++)
+					column[i] += offsets[i];
+				p += n * 4;
+			}
+		}
+	}
+
+	private int readColumn(int p, double[] column, int n) {
+		if (!quantized) {
+			mapped.slice(p, n * 8).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(column, 0, n);
+			return p + n * 8;
+		}
+		float[] values = floats(p, n);
+		for (int i = 0; i < n; i++)
+			column[i] = values[i];
+		return p + n * 4;
+	}
+
+	private float[] floats(int p, int n) {
+		if (scratch.length < n)
+			scratch = new float[Math.max(n, scratch.length * 2)];
+		mapped.slice(p, n * 4).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(scratch, 0, n);
+		return scratch;
+	}
+
+	// the snapshot's arrays (masses and handles aren't recorded; they stay empty)
+	private void resize(int n) {
+		Snapshot s = snapshot;
+		s.n = n;
+		if (s.sx.length >= n)
+			return;
+		int size = Math.max(n, s.sx.length * 2);
+		s.sx = new double[size];
+		s.sy = new double[size];
+		s.vx = new double[size];
+		s.vy = new double[size];
+		s.mass = new double[size];
+		s.radius = new double[size];
+		s.colors = new Color[size];
+		s.handles = new Body2D[size];
+	}
+
+	// a few bytes from the file
+	private ByteBuffer read(long at, int length) throws IOException {
+		ByteBuffer buffer = length <= small.capacity() ? small : ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.clear().limit(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, at + buffer.position()) < 0)
+				throw new IOException("unexpected end of the recording");
+		}
+		return buffer.flip();
+	}
+
+	public void close() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+		}
+	}
+
+	// the current frame for the renderer
+	public Snapshot snapshot() {
+		snapshot.paused = paused;
+		snapshot.frame = (int) frame;
+		snapshot.frames = (int) Math.min(Integer.MAX_VALUE, frames);
+		snapshot.selected = -1;
+		return snapshot;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public long getFrame() {
+		return frame;
+	}
+
+	public long getFrames() {
+		return frames;
+	}
+
+	// simulated seconds of the current frame
+	public double getTime() {
+		return time;
+	}
+
+	public double getSpeed() {
+		return speed;
+	}
+
+	public boolean isPaused() {
+		return paused;
+	}
+
+}
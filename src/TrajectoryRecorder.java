@@ -0,0 +1,383 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+
+// records every Nth frame's positions and velocities (and radii and colors, for replaying) to a
+// file. the simulation thread only copies the arrays into a pooled frame and queues it; a writer
+// thread encodes the frames into chunks and writes them. there are only a few frames in the
+// pool, so when the disk can't keep up the simulation waits for it instead of filling memory
+//
+// all little-endian: header, chunks, chunk index, trailer
+//   header (header_bytes): magic "NBODYTRJ", version, flags (quantized, delta), every, reserved
+//   chunk: chunk_magic, frames, first frame (long), payload bytes, an int per frame with its
+//     offset in the payload, then the payload; a chunk starts with a keyframe so it can be
+//     decoded without the chunks before it
+//   frame: time (double), bodies, kind (key or delta), then its columns
+//     key: sx, sy, vx, vy, radius (doubles, or floats when quantized) and color (argb ints)
+//     delta: sx, sy, vx, vy as float offsets from the previous frame (radii and colors as before)
+//   index: file offset (long) of each chunk
+//   trailer (trailer_bytes): index offset (long), chunks, frames (long), end magic
+// a recording that was never closed has no index or trailer; its chunks can still be read in order
+public class TrajectoryRecorder implements FrameListener {
+
+	static final long magic = 0x4a525459444f424eL; // "NBODYTRJ" read as a little-endian long
+	static final long end_magic = 0x5845444e494a5254L; // "TRJINDEX"
+	static final int version = 1;
+	static final int header_bytes = 64;
+	static final int chunk_magic = 0x4b4e4843; // "CHNK"
+	static final int chunk_header_bytes = 4 + 4 + 8 + 4;
+	static final int frame_header_bytes = 8 + 4 + 4; // time, bodies, kind
+	static final int trailer_bytes = 8 + 4 + 8 + 8;
+	static final int flag_quantized = 1, flag_delta = 2;
+	static final int key = 0, delta = 1;
+
+	private final int frames_per_chunk = 64;
+	private final int chunk_bytes = 16 * 1048576; // chunks end early past this many bytes
+
+	private final File file;
+	private final FileChannel channel;
+	private final int every, queued;
+	private final boolean quantize, deltas;
+
+	// frames waiting to be written, and empty ones for the simulation to fill
+	private final ArrayBlockingQueue<Frame> queue, free;
+	private final Frame last = new Frame(); // queued by close
+	private final Thread writer;
+	private final Thread hook = new Thread(this::closeQuietly, "Recorder shutdown");
+	private volatile boolean closed = false;
+	private volatile IOException error = null;
+	private long seen = 0; // frames offered (simulation thread)
+
+	// writer state
+	private ByteBuffer payload = ByteBuffer.allocateDirect(1048576).order(ByteOrder.LITTLE_ENDIAN);
+	private final ByteBuffer chunkHeader;
+	private final int[] offsets;
+	private int chunkFrames = 0;
+	private volatile long frames = 0; // written or in the current chunk
+	private long position = header_bytes; // where the next chunk goes
+	private long[] index = new long[64];
+	private int chunks = 0;
+	// previous frame as a reader decodes it (what deltas are taken from)
+	private double[] px = new double[0], py = new double[0], pvx = new double[0], pvy = new double[0];
+	private int previousN = -1;
+	private long previousVersion = -1;
+	private BodyStore previousStore = null;
+	private float[] scratch = new float[0];
+
+	// stats
+	private final long start = System.nanoTime();
+	private volatile long bytes = header_bytes, bodyFrames = 0;
+	private volatile long stalled = 0; // ns the simulation waited for a free frame
+
+	// records every frames to file; quantize stores keyframes as floats, deltas stores the frames
+	// between keyframes as float offsets from the frame before; queued is how many frames can
+	// wait to be written
+	public TrajectoryRecorder(File file, int every, boolean quantize, boolean deltas, int queued) throws IOException {
+		this.file = file;
+		this.every = Math.max(1, every);
+		this.quantize = quantize;
+		this.deltas = deltas;
+		this.queued = queued = Math.max(1, queued);
+		queue = new ArrayBlockingQueue<>(queued + 1);
+		free = new ArrayBlockingQueue<>(queued);
+		for (int k = 0; k < queued; k++)
+			free.add(new Frame());
+		offsets = new int[frames_per_chunk];
+		chunkHeader = ByteBuffer.allocateDirect(chunk_header_bytes + 4 * frames_per_chunk).order(ByteOrder.LITTLE_ENDIAN);
+
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		ByteBuffer header = ByteBuffer.allocate(header_bytes).order(ByteOrder.LITTLE_ENDIAN);
+		header.putLong(magic).putInt(version).putInt((quantize ? flag_quantized : 0) | (deltas ? flag_delta : 0)).putInt(this.every);
+		header.clear();
+		writeFully(header);
+
+		writer = new Thread(this::run, "Recorder");
+		writer.setDaemon(true);
+		writer.start();
+		Runtime.getRuntime().addShutdownHook(hook); // a recording cut off by exiting still gets its index
+	}
+
+	// copies the frame (every Nth one) and queues it; waits while all the frames are queued
+	public void frame(BodyStore bodies, double time) {
+		if (closed || seen++ % every != 0)
+			return;
+		Frame frame = free.poll();
+		if (frame == null) {
+			long wait = System.nanoTime();
+			try {
+				frame = free.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			stalled += System.nanoTime() - wait;
+		}
+		frame.capture(bodies, time);
+		queue.add(frame);
+	}
+
+	// writes what is queued, the index and the trailer
+	public void close() throws IOException {
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+		}
+		try {
+			queue.put(last);
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			Runtime.getRuntime().removeShutdownHook(hook);
+		} catch (IllegalStateException e) { // already shutting down (this is the hook)
+		}
+		try {
+			if (error == null)
+				finish();
+		} catch (IOException e) {
+			error = e;
+		} finally {
+			channel.close();
+		}
+		if (error != null)
+			throw error;
+	}
+
+	private void closeQuietly() {
+		try {
+			close();
+		} catch (IOException e) {
+			System.err.println("Couldn't finish recording " + file + ": " + e.getMessage());
+		}
+	}
+
+	// writer thread: encodes queued frames until close
+	private void run() {
+		try {
+			while (true) {
+				Frame frame = queue.take();
+				if (frame == last)
+					return;
+				if (error == null) {
+					try {
+						encode(frame);
+					} catch (IOException e) {
+						error = e;
+						System.err.println("Couldn't record " + file + ": " + e.getMessage());
+					}
+				}
+				free.add(frame); // even after an error, so the simulation never waits forever
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void encode(Frame f) throws IOException {
+		int n = f.n;
+		boolean keyframe = !deltas || chunkFrames == 0 || n != previousN || f.version != previousVersion || f.store != previousStore;
+		if (chunkFrames > 0 && payload.position() + frameBytes(n, keyframe) > chunk_bytes) {
+			flush();
+			keyframe = true;
+		}
+		ensure(frameBytes(n, keyframe));
+
+		offsets[chunkFrames++] = payload.position();
+		payload.putDouble(f.time).putInt(n).putInt(keyframe ? key : delta);
+		if (keyframe) {
+			if (px.length < n) {
+				int length = Math.max(n, px.length * 2);
+				px = new double[length];
+				py = new double[length];
+				pvx = new double[length];
+				pvy = new double[length];
+			}
+			putColumn(f.sx, px, n);
+			putColumn(f.sy, py, n);
+			putColumn(f.vx, pvx, n);
+			putColumn(f.vy, pvy, n);
+			putColumn(f.radius, null, n);
+			payload.asIntBuffer().put(f.color, 0, n);
+			payload.position(payload.position() + n * 4);
+		} else {
+			putOffsets(f.sx, px, n);
+			putOffsets(f.sy, py, n);
+			putOffsets(f.vx, pvx, n);
+			putOffsets(f.vy, pvy, n);
+		}
+		previousN = n;
+		previousVersion = f.version;
+		previousStore = f.store;
+		frames++;
+		bodyFrames += n;
+		if (chunkFrames == frames_per_chunk)
+			flush();
+	}
+
+	private int frameBytes(int n, boolean keyframe) {
+		return frame_header_bytes + n * (keyframe ? (quantize ? 5 * 4 : 5 * 8) + 4 : 4 * 4);
+	}
+
+	// a keyframe column, keeping what a reader will decode in previous
+	private void putColumn(double[] values, double[] previous, int n) {
+		if (!quantize) {
+			payload.asDoubleBuffer().put(values, 0, n);
+			payload.position(payload.position() + n * 8);
+			if (previous != null)
+				System.arraycopy(values, 0, previous, 0, n);
+			return;
+		}
+		float[] floats = scratch(n);
+		for (int i = 0; i < n; i++) {
+			floats[i] = (float) values[i];
+			if (previous != null)
+				previous[i] = floats[i];
+		}
+		payload.asFloatBuffer().put(floats, 0, n);
+		payload.position(payload.position() + n * 4);
+	}
+
+	// offsets from the previous frame (rounded the way the reader will add them, so the error
+	// doesn't build up from frame to frame)
+	private void putOffsets(double[] values, double[] previous, int n) {
+		float[] floats = scratch(n);
+		for (int i = 0; i < n; i++) {
+			float d = (float) (values[i] - previous[i]);
+			floats[i] = d;
+			previous[i] += d;
+		}
+		payload.asFloatBuffer().put(floats, 0, n);
+		payload.position(payload.position() + n * 4);
+	}
+
+	private float[] scratch(int n) {
+		if (scratch.length < n)
+			scratch = new float[Math.max(n, scratch.length * 2)];
+		return scratch;
+	}
+
+	private void ensure(int size) {
+		if (payload.remaining() >= size)
+			return;
+		ByteBuffer bigger = ByteBuffer.allocateDirect(Math.max(payload.capacity() * 2, payload.position() + size)).order(ByteOrder.LITTLE_ENDIAN);
+		payload.flip();
+		bigger.put(payload);
+		payload = bigger;
+	}
+
+	// writes the current chunk
+	private void flush() throws IOException {
+		if (chunkFrames == 0)
+			return;
+		chunkHeader.clear();
+		chunkHeader.putInt(chunk_magic).putInt(chunkFrames).putLong(frames - chunkFrames).putInt(payload.position());
+		chunkHeader.asIntBuffer().put(offsets, 0, chunkFrames);
+		chunkHeader.position(chunkHeader.position() + chunkFrames * 4);
+		chunkHeader.flip();
+		payload.flip();
+		if (chunks == index.length)
+			index = Arrays.copyOf(index, chunks * 2);
+		index[chunks++] = position;
+		long size = chunkHeader.remaining() + payload.remaining();
+		writeFully(chunkHeader);
+		writeFully(payload);
+		position += size;
+		bytes = position;
+		payload.clear();
+		chunkFrames = 0;
+	}
+
+	// the last chunk, the index and the trailer
+	private void finish() throws IOException {
+		flush();
+		ByteBuffer tail = ByteBuffer.allocate(chunks * 8 + trailer_bytes).order(ByteOrder.LITTLE_ENDIAN);
+		tail.asLongBuffer().put(index, 0, chunks);
+		tail.position(chunks * 8);
+		tail.putLong(position).putInt(chunks).putLong(frames).putLong(end_magic);
+		tail.flip();
+		writeFully(tail);
+		bytes = position + chunks * 8 + trailer_bytes;
+	}
+
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	// frames written (or about to be)
+	public long getFrames() {
+		return frames;
+	}
+
+	public long getBytes() {
+		return bytes;
+	}
+
+	// bodies times frames recorded per second since the start
+	public double getRate() {
+		return bodyFrames / ((System.nanoTime() - start) / 1e9);
+	}
+
+	public int getQueued() {
+		return queue.size();
+	}
+
+	public int getQueueSize() {
+		return queued;
+	}
+
+	// ms the simulation spent waiting for the writer
+	public long getStalled() {
+		return stalled / 1000000;
+	}
+
+	public boolean isFailed() {
+		return error != null;
+	}
+
+	// one copied frame (pooled)
+	private static class Frame {
+
+		double time;
+		int n;
+		long version; // the bodies' version; a change means keyframe
+		BodyStore store;
+		double[] sx = new double[0], sy = new double[0], vx = new double[0], vy = new double[0], radius = new double[0];
+		int[] color = new int[0];
+
+		void capture(BodyStore bodies, double time) {
+			this.time = time;
+			n = bodies.size();
+			version = bodies.getVersion();
+			store = bodies;
+			if (sx.length < n) {
+				int size = Math.max(n, sx.length * 2);
+				sx = new double[size];
+				sy = new double[size];
+				vx = new double[size];
+				vy = new double[size];
+				radius = new double[size];
+				color = new int[size];
+			}
+			System.arraycopy(bodies.sx, 0, sx, 0, n);
+			System.arraycopy(bodies.sy, 0, sy, 0, n);
+			System.arraycopy(bodies.vx, 0, vx, 0, n);
+			System.arraycopy(bodies.vy, 0, vy, 0, n);
+			System.arraycopy(bodies.radius, 0, radius, 0, n);
+			for (int i = 0; i < n; i++)
+				color[i] = bodies.get(i).getColor().getRGB();
+		}
+	}
+
+}
@@ -0,0 +1,288 @@
+// Wisdom-Holman (democratic heliocentric coordinates): between kicks from each other, bodies
+// follow exact Kepler orbits around the heaviest body, so systems with one dominant mass can
+// take steps of hours or days
+public class WisdomHolman {
+
+	private final double G = Gravity.G; // m^3 kg^-1 s^-2
+	private final double min_dominance = 10.0; // the central body must outweigh everything else this many times
+	private final int orbit_steps = 64; // sub-steps per orbit of the closest pair of other bodies
+	private final int kepler_steps = 8; // sub-steps per orbit around the central body (those are exact)
+	private final int max_substeps = 1024; // past this the step is left to direct integration
+
+	// heliocentric positions and barycentric velocities (the central body's slot is unused)
+	private double[] qx = new double[0], qy = new double[0], ux = new double[0], uy = new double[0];
+	private double[] m = new double[0]; // masses (test particles don't pull, so they count as 0)
+	private double[] reach = new double[0]; // how far away a body can be and still need smaller steps
+	private SpatialGrid grid = new SpatialGrid();
+	private double needed = 1.0; // sub-steps (found by substepsFor)
+	private double[][] gScratch = new double[0][]; // per-worker G-functions for kepler
+
+	// stats for the last step
+	private int central = -1;
+	private int substeps = 0; // 0 = not taken
+
+	// one step of deltaTime; returns false without moving anything if there's no dominant body
+	// or an encounter is too close to split the step for. forcesValid says the store's
+	// accelerations still match the positions; force sets them from the positions
+	public boolean step(BodyStore bodies, double deltaTime, boolean forcesValid, Runnable force, WorkerPool workers) {
+		int n = bodies.size();
+		substeps = 0;
+		central = -1;
+		if (n < 2)
+			return false;
+		if (qx.length < n) {
+			int size = Math.max(n, qx.length * 2);
+			qx = new double[size];
+			qy = new double[size];
+			ux = new double[size];
+			uy = new double[size];
+			m = new double[size];
+			reach = new double[size];
+		}
+		double[] sx = bodies.sx, sy = bodies.sy, vx = bodies.vx, vy = bodies.vy, mass = m;
+		bodies.sources();
+		for (int i = 0; i < n; i++)
+			m[i] = bodies.test[i] ? 0.0 : bodies.mass[i];
+
+		// central body and barycenter
+		int c = 0;
+		double total = 0.0, cmx = 0.0, cmy = 0.0, cvx = 0.0, cvy = 0.0;
+		for (int i = 0; i < n; i++) {
+			if (mass[i] > mass[c])
+				c = i;
+			total += mass[i];
+			cmx += mass[i] * sx[i];
+			cmy += mass[i] * sy[i];
+			cvx += mass[i] * vx[i];
+			cvy += mass[i] * vy[i];
+		}
+		double mc = mass[c];
+		if (!(total - mc < mc / min_dominance))
+			return false;
+		cmx /= total;
+		cmy /= total;
+		cvx /= total;
+		cvy /= total;
+
+		// encounters are handled by splitting the step (the closest one decides for everyone)
+		double count = substepsFor(bodies, c, deltaTime);
+		if (!(count <= max_substeps))
+			return false;
+		int steps = (int) count;
+		double h = deltaTime / steps;
+
+		for (int i = 0; i < n; i++) {
+			qx[i] = sx[i] - sx[c];
+			qy[i] = sy[i] - sy[c];
+			ux[i] = vx[i] - cvx;
+			uy[i] = vy[i] - cvy;
+		}
+		if (!forcesValid)
+			force.run();
+		double mu = G * mc;
+		final int center = c;
+		if (gScratch.length != workers.getWorkers())
+			gScratch = new double[workers.getWorkers()][4];
+		for (int s = 0; s < steps; s++) {
+			kick(bodies, c, h / 2);
+			jump(bodies, c, h / 2);
+			workers.run(n, (start, end) -> {
+				double[] g = gScratch[workers.slot()];
+				for (int i = start; i < end; i++)
+					if (i != center)
+						kepler(i, mu, h, g);
+			});
+			jump(bodies, c, h / 2);
+
+			// back to positions the force can use (the barycenter drifts in a straight line)
+			double t = (s + 1) * h;
+			double px = 0.0, py = 0.0;
+			for (int i = 0; i < n; i++) {
+				if (i == c)
+					continue;
+				px += mass[i] * qx[i];
+				py += mass[i] * qy[i];
+			}
+			sx[c] = cmx + cvx * t - px / total;
+			sy[c] = cmy + cvy * t - py / total;
+			for (int i = 0; i < n; i++) {
+				if (i == c)
+					continue;
+				sx[i] = sx[c] + qx[i];
+				sy[i] = sy[c] + qy[i];
+			}
+			force.run();
+			kick(bodies, c, h / 2);
+		}
+
+		// velocities (the central body's keeps the total momentum)
+		double px = 0.0, py = 0.0;
+		for (int i = 0; i < n; i++) {
+			if (i == c)
+				continue;
+			vx[i] = ux[i] + cvx;
+			vy[i] = uy[i] + cvy;
+			px += mass[i] * ux[i];
+			py += mass[i] * uy[i];
+		}
+		vx[c] = cvx - px / mc;
+		vy[c] = cvy - py / mc;
+		central = c;
+		substeps = steps;
+		return true;
+	}
+
+	// sub-steps needed so every close pair of bodies gets orbit_steps per orbit (and every orbit
+	// around the central body kepler_steps); infinite if two bodies are on top of each other
+	private double substepsFor(BodyStore bodies, int c, double deltaTime) {
+		int n = bodies.size();
+		double[] sx = bodies.sx, sy = bodies.sy, mass = m;
+		double dt = Math.abs(deltaTime);
+		needed = 1.0;
+
+		// around the central body
+		for (int i = 0; i < n; i++) {
+			if (i == c)
+				continue;
+			double x = sx[i] - sx[c];
+			double y = sy[i] - sy[c];
+			double period = 2 * Math.PI * Math.sqrt((x * x + y * y) * Math.sqrt(x * x + y * y) / (G * (mass[c] + mass[i])));
+			needed = Math.max(needed, kepler_steps * dt / period);
+		}
+
+		// other pairs: their orbits are only short enough to matter closer than
+		// (G (mi + mj))^(1/3) (orbit_steps dt / 2 pi)^(2/3), and (mi + mj)^(1/3) <= mi^(1/3) + mj^(1/3)
+		double span = Math.cbrt(G) * Math.pow(orbit_steps * dt / (2 * Math.PI), 2.0 / 3.0);
+		for (int i = 0; i < n; i++)
+			reach[i] = i == c || bodies.test[i] ? 0.0 : span * bodies.massRoot[i];
+		grid.forEachCandidate(sx, sy, reach, n, (i, j) -> {
+			if (i == c || j == c || mass[i] + mass[j] == 0)
+				return;
+			double x = sx[j] - sx[i];
+			double y = sy[j] - sy[i];
+			double z2 = x * x + y * y;
+			double period = 2 * Math.PI * Math.sqrt(z2 * Math.sqrt(z2) / (G * (mass[i] + mass[j])));
+			needed = Math.max(needed, orbit_steps * dt / period);
+		});
+		return Math.ceil(needed);
+	}
+
+	// interaction kick: the forces minus the central body's pull (which the Kepler orbits already have)
+	private void kick(BodyStore bodies, int c, double timeStep) {
+		int n = bodies.size();
+		double[] ax = bodies.ax, ay = bodies.ay;
+		double mu = G * m[c];
+		for (int i = 0; i < n; i++) {
+			if (i == c)
+				continue;
+			double z2 = qx[i] * qx[i] + qy[i] * qy[i];
+			double f = mu / (z2 * Math.sqrt(z2));
+			ux[i] += (ax[i] + f * qx[i]) * timeStep;
+			uy[i] += (ay[i] + f * qy[i]) * timeStep;
+		}
+	}
+
+	// the central body's share of everyone's momentum moves every heliocentric position
+	private void jump(BodyStore bodies, int c, double timeStep) {
+		int n = bodies.size();
+		double[] mass = m;
+		double px = 0.0, py = 0.0;
+		for (int i = 0; i < n; i++) {
+			if (i == c)
+				continue;
+			px += mass[i] * ux[i];
+			py += mass[i] * uy[i];
+		}
+		double dx = px / mass[c] * timeStep, dy = py / mass[c] * timeStep;
+		for (int i = 0; i < n; i++) {
+			qx[i] += dx;
+			qy[i] += dy;
+		}
+	}
+
+	// moves body i along its Kepler orbit (any eccentricity) for timeStep using universal
+	// variables: the f and g functions from the universal anomaly s, which comes from Kepler's
+	// equation r0 G1(s) + eta0 G2(s) + mu G3(s) = timeStep (Laguerre-Conway iterations); g holds
+	// the G-functions while it runs
+	private void kepler(int i, double mu, double timeStep, double[] g) {
+		double x0 = qx[i], y0 = qy[i], vx0 = ux[i], vy0 = uy[i];
+		double r0 = Math.sqrt(x0 * x0 + y0 * y0);
+		if (!(r0 > 0))
+			return;
+		double eta0 = x0 * vx0 + y0 * vy0;
+		double beta = 2 * mu / r0 - (vx0 * vx0 + vy0 * vy0); // mu / semi-major axis
+		double zeta0 = mu - beta * r0;
+
+		// a bound orbit is back where it started after every period
+		double dt = timeStep;
+		if (beta > 0) {
+			double period = 2 * Math.PI * mu / (beta * Math.sqrt(beta));
+			dt = Math.IEEEremainder(dt, period);
+		}
+
+		double s = beta > 0 ? dt * beta / mu : dt / r0; // mean motion, or how far it goes in a straight line
+		double r = r0;
+		for (int k = 0; k < 50; k++) {
+			gFunctions(beta, s, g);
+			double f = r0 * g[1] + eta0 * g[2] + mu * g[3] - dt;
+			r = r0 * g[0] + eta0 * g[1] + mu * g[2]; // f'
+			double f2 = eta0 * g[0] + zeta0 * g[1]; // f''
+			double root = Math.sqrt(Math.abs(16 * r * r - 20 * f * f2)); // Laguerre with n = 5
+			double ds = 5 * f / (r + Math.copySign(root, r));
+			s -= ds;
+			if (!(Math.abs(ds) > 1e-15 * Math.abs(s)))
+				break;
+		}
+		gFunctions(beta, s, g);
+		r = r0 * g[0] + eta0 * g[1] + mu * g[2];
+
+		double fl = 1 - mu * g[2] / r0;
+		double gl = dt - mu * g[3];
+		double fd = -mu * g[1] / (r0 * r);
+		double gd = 1 - mu * g[2] / r;
+		qx[i] = fl * x0 + gl * vx0;
+		qy[i] = fl * y0 + gl * vy0;
+		ux[i] = fd * x0 + gd * vx0;
+		uy[i] = fd * y0 + gd * vy0;
+	}
+
+	// G_k(s) = s^k c_k(beta s^2) with the Stumpff functions c_k
+	private static void gFunctions(double beta, double s, double[] g) {
+		double z = beta * s * s;
+		double c2, c3;
+		if (Math.abs(z) < 1) { // series (the closed forms cancel out near 0)
+			c2 = 0.0;
+			c3 = 0.0;
+			double term2 = 0.5, term3 = 1 / 6.0;
+			for (int k = 1; k <= 12; k++) {
+				c2 += term2;
+				c3 += term3;
+				term2 *= -z / ((2 * k + 1) * (2 * k + 2));
+				term3 *= -z / ((2 * k + 2) * (2 * k + 3));
+			}
+		} else if (z > 0) {
+			double w = Math.sqrt(z);
+			c2 = (1 - Math.cos(w)) / z;
+			c3 = (w - Math.sin(w)) / (z * w);
+		} else {
+			double w = Math.sqrt(-z);
+			c2 = (Math.cosh(w) - 1) / -z;
+			c3 = (Math.sinh(w) - w) / (-z * w);
+		}
+		g[0] = 1 - z * c2;
+		g[1] = s * (1 - z * c3);
+		g[2] = s * s * c2;
+		g[3] = s * s * s * c3;
+	}
+
+	// central body of the last step (-1 = the step wasn't taken)
+	public int getCentral() {
+		return central;
+	}
+
+	// sub-steps the last step was split into for encounters (0 = it wasn't taken)
+	public int getSubsteps() {
+		return substeps;
+	}
+
+}
@@ -0,0 +1,142 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// long-lived work-stealing pool for splitting loops over bodies
+public class WorkerPool {
+
+	// a piece of a loop, start (inclusive) to end (exclusive)
+	public interface Range {
+		void run(int start, int end);
+	}
+
+	private final int chunks_per_worker = 8; // extra chunks so idle workers can steal
+
+	private final ForkJoinPool pool;
+	private final int workers;
+	private final AtomicIntegerArray slots; // which worker slots are taken
+	private int lastChunks = 0;
+
+	// utilization
+	private final AtomicLongArray busy; // ns spent working per worker
+	private final long[] lastBusy;
+	private final double[] utilization;
+	private long lastSample = System.nanoTime();
+
+	public WorkerPool(int workers) {
+		this.workers = Math.max(1, workers);
+		slots = new AtomicIntegerArray(this.workers);
+		// never more threads than slots, so each running worker owns one slot
+		pool = new ForkJoinPool(this.workers, p -> new Worker(p), null, false, 0, this.workers, 1, p -> true, 60, TimeUnit.SECONDS);
+		busy = new AtomicLongArray(this.workers);
+		lastBusy = new long[this.workers];
+		utilization = new double[this.workers];
+	}
+
+	// runs range over 0 to n split into balanced chunks and waits for it to finish
+	public void run(int n, Range range) {
+		if (n <= 0)
+			return;
+		int grain = Math.max(1, n / (workers * chunks_per_worker));
+		lastChunks = (n + grain - 1) / grain;
+		pool.invoke(new Chunk(range, 0, n, grain));
+	}
+
+	// recalculates utilization since the last sample
+	public void sample() {
+		long now = System.nanoTime();
+		long wall = now - lastSample;
+		if (wall <= 0)
+			return;
+		for (int i = 0; i < workers; i++) {
+			long total = busy.get(i);
+			utilization[i] = Math.min(1.0, (total - lastBusy[i]) / (double) wall);
+			lastBusy[i] = total;
+		}
+		lastSample = now;
+	}
+
+	// slot (0 to workers - 1) of the worker running the current chunk
+	public int slot() {
+		Thread thread = Thread.currentThread();
+		if (thread instanceof Worker && ((Worker) thread).getPool() == pool)
+			return ((Worker) thread).slot;
+		throw new IllegalStateException("not running on a worker of this pool");
+	}
+
+	public int getWorkers() {
+		return workers;
+	}
+
+	public int getLastChunks() {
+		return lastChunks;
+	}
+
+	// fraction of wall time each worker spent working (from the last sample)
+	public double[] getUtilization() {
+		return utilization;
+	}
+
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	// halves itself until it is small enough to run
+	class Chunk extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Range range;
+		private final int start, end, grain;
+
+		public Chunk(Range range, int start, int end, int grain) {
+			this.range = range;
+			this.start = start;
+			this.end = end;
+			this.grain = grain;
+		}
+
+		protected void compute() {
+			if (end - start <= grain) {
+				long t = System.nanoTime();
+				range.run(start, end);
+				busy.addAndGet(slot(), System.nanoTime() - t);
+				return;
+			}
+			int middle = (start + end) >>> 1;
+			invokeAll(new Chunk(range, start, middle, grain), new Chunk(range, middle, end, grain));
+		}
+	}
+
+	// pool thread that holds one slot while it is alive
+	class Worker extends ForkJoinWorkerThread {
+
+		private int slot = -1;
+
+		public Worker(ForkJoinPool pool) {
+			super(pool);
+			setDaemon(true);
+		}
+
+		protected void onStart() {
+			super.onStart();
+			while (slot == -1) {
+				for (int i = 0; i < workers; i++) {
+					if (slots.compareAndSet(i, 0, 1)) {
+						slot = i;
+						break;
+					}
+				}
+			}
+		}
+
+		protected void onTermination(Throwable exception) {
+			slots.set(slot, 0);
+			super.onTermination(exception);
+		}
+	}
+
+}